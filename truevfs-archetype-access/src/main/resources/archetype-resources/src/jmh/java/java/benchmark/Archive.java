@@ -0,0 +1,111 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.benchmark;
+
+import ${package}.java.util.CorpusGenerator;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TPath;
+import net.java.truevfs.access.TVFS;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * An archive file in a temporary directory with a parameterized format,
+ * number of entries and entry size.
+ * The archive file gets generated by a {@link CorpusGenerator}, so the
+ * entries get spread over ten directories and their contents are moderately
+ * compressible.
+ */
+@State(Scope.Benchmark)
+public class Archive {
+
+    @Param({ "zip" })
+    public String format;
+
+    @Param({ "10", "1000" })
+    public int entries;
+
+    @Param({ "4096", "262144" })
+    public int entrySize;
+
+    /** The temporary directory which contains the archive file. */
+    public Path dir;
+
+    /** The archive file. */
+    public TFile file;
+
+    /** The entries of the archive file for use with the File* API. */
+    public TFile[] files;
+
+    /** The entries of the archive file for use with the Path API. */
+    public TPath[] paths;
+
+    /** The total size of all entries in megabytes. */
+    public double megabytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("benchmark");
+        file = new TFile(dir.toFile(), "archive." + format);
+        final List<String> names = new ArrayList<>(entries);
+        final long bytes = new CorpusGenerator()
+                .entries(entries)
+                .meanSize(entrySize)
+                .depth(1)
+                .fanout(10)
+                .generate(file, names);
+        TVFS.umount();
+        files = new TFile[entries];
+        paths = new TPath[entries];
+        for (int i = 0; i < entries; i++) {
+            files[i] = new TFile(file, names.get(i));
+            paths[i] = new TPath(files[i]);
+        }
+        megabytes = bytes / 1e6;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        TVFS.umount();
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(
+                    final Path file,
+                    final BasicFileAttributes attrs)
+            throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(
+                    final Path dir,
+                    final IOException ex)
+            throws IOException {
+                if (null != ex) throw ex;
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** An output stream which discards all data. */
+    public static final OutputStream NULL = new OutputStream() {
+        @Override public void write(int b) { }
+        @Override public void write(byte[] b, int off, int len) { }
+    };
+}
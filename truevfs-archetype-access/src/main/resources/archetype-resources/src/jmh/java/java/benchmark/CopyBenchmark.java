@@ -0,0 +1,73 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.benchmark;
+
+import ${package}.java.file.ParallelCopy;
+import ${package}.java.path.PathCopy;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TPath;
+import net.java.truevfs.access.TVFS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the throughput of recursively copying an archive file to a new
+ * archive file like the {@code Copy} samples do.
+ * Each operation includes unmounting all archive files, so that the target
+ * archive file gets written completely.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CopyBenchmark {
+
+    private final int threads = Runtime.getRuntime().availableProcessors();
+    private TFile target;
+
+    @Setup(Level.Invocation)
+    public void setup(Archive archive) throws IOException {
+        TVFS.umount();
+        target = new TFile(archive.dir.toFile(), "copy.zip");
+        if (target.exists()) target.rm_r();
+    }
+
+    /** Like {@code java.file.Copy}. */
+    @Benchmark
+    public void cp_rp(Archive archive, Throughput throughput)
+    throws IOException {
+        archive.file.cp_rp(target);
+        TVFS.umount();
+        throughput.megabytes += archive.megabytes;
+    }
+
+    /** Like {@code java.file.Copy --threads}. */
+    @Benchmark
+    public void parallelCopy(Archive archive, Throughput throughput)
+    throws IOException {
+        new ParallelCopy(threads, 4 * threads, 1024 * 1024)
+                .cp_rp(archive.file, target);
+        TVFS.umount();
+        throughput.megabytes += archive.megabytes;
+    }
+
+    /** Like {@code java.path.Copy --recursive}. */
+    @Benchmark
+    public void pathCopy(Archive archive, Throughput throughput)
+    throws IOException {
+        new PathCopy(threads, 4 * threads, COPY_ATTRIBUTES, REPLACE_EXISTING)
+                .copy(new TPath(archive.file), new TPath(target));
+        TVFS.umount();
+        throughput.megabytes += archive.megabytes;
+    }
+}
@@ -0,0 +1,58 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.benchmark;
+
+import ${package}.java.util.FileTreeModel;
+import ${package}.java.util.PathTreeModel;
+import ${package}.java.util.TreeGraph;
+import ${package}.java.util.TreePrinter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.java.truevfs.access.TPath;
+import net.java.truevfs.access.TVFS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the latency of printing the tree graph of an archive file like
+ * the {@code java.file.Tree} and {@code java.path.Tree} samples do.
+ * If {@code cold} is {@code true}, then the archive file gets unmounted
+ * before each operation, so that the latency includes mounting it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ListBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean cold;
+
+    private final TreeGraph<java.io.File> fileGraph
+            = new TreeGraph<>(new FileTreeModel(), true);
+    private final TreeGraph<java.nio.file.Path> pathGraph
+            = new TreeGraph<>(new PathTreeModel(), true);
+
+    @Benchmark
+    public long fileTree(Archive archive) throws IOException {
+        if (cold) TVFS.umount();
+        final TreePrinter printer = new TreePrinter(Archive.NULL);
+        fileGraph.graph(archive.file, printer);
+        printer.flush();
+        return printer.lines();
+    }
+
+    @Benchmark
+    public long pathTree(Archive archive) throws IOException {
+        if (cold) TVFS.umount();
+        final TreePrinter printer = new TreePrinter(Archive.NULL);
+        pathGraph.graph(new TPath(archive.file), printer);
+        printer.flush();
+        return printer.lines();
+    }
+}
@@ -0,0 +1,81 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.benchmark;
+
+import ${package}.java.path.PathCopy;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import net.java.truevfs.access.TArchiveDetector;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TPath;
+import net.java.truevfs.access.TVFS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares the recursive copy by {@link TFile${symbol_pound}cp_rp} with the recursive copy
+ * by {@link PathCopy} like {@code java.path.Copy --recursive} does.
+ * The source is either the archive file or a plain directory tree with the
+ * same entries, and the target is a new archive file.
+ * Each operation includes unmounting all archive files, so that the target
+ * archive file gets written completely.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PathCopyBenchmark {
+
+    @Param({ "archive", "directory" })
+    public String source;
+
+    private final int threads = Runtime.getRuntime().availableProcessors();
+    private TFile src, dst;
+
+    @Setup(Level.Trial)
+    public void setupTrial(Archive archive) throws IOException {
+        if ("archive".equals(source)) {
+            src = archive.file;
+        } else {
+            src = new TFile(archive.dir.toFile(), "directory");
+            if (!src.exists())
+                TFile.cp_rp(archive.file, src, TArchiveDetector.NULL);
+            TVFS.umount();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation(Archive archive) throws IOException {
+        TVFS.umount();
+        dst = new TFile(archive.dir.toFile(), "copy.zip");
+        if (dst.exists()) dst.rm_r();
+    }
+
+    /** Like {@code java.file.Copy}. */
+    @Benchmark
+    public void cp_rp(Archive archive, Throughput throughput)
+    throws IOException {
+        src.cp_rp(dst);
+        TVFS.umount();
+        throughput.megabytes += archive.megabytes;
+    }
+
+    /** Like {@code java.path.Copy --recursive}. */
+    @Benchmark
+    public void pathCopy(Archive archive, Throughput throughput)
+    throws IOException {
+        new PathCopy(threads, 4 * threads, COPY_ATTRIBUTES, REPLACE_EXISTING)
+                .copy(new TPath(src), new TPath(dst));
+        TVFS.umount();
+        throughput.megabytes += archive.megabytes;
+    }
+}
@@ -0,0 +1,83 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.benchmark;
+
+import ${package}.java.path.ChannelCat;
+import ${package}.java.util.BufferPool;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+import net.java.truevfs.access.TPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the throughput of reading all entries of an archive file with the
+ * strategies of the {@code Cat} samples.
+ * One operation reads all entries once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ReadBenchmark {
+
+    private final WritableByteChannel channel = Channels.newChannel(Archive.NULL);
+    private final ChannelCat cat = new ChannelCat(new BufferPool(64 * 1024, 1));
+    private final ByteBuffer buf = ByteBuffer.allocate(8096);
+
+    /** Like {@code java.file.Cat} and {@code java.path.Cat1}. */
+    @Benchmark
+    public void tfileCat(Archive archive, Throughput throughput)
+    throws IOException {
+        for (TFile file : archive.files) {
+            try (InputStream in = new TFileInputStream(file)) {
+                TFile.cat(in, Archive.NULL);
+            }
+        }
+        throughput.megabytes += archive.megabytes;
+    }
+
+    /** Like the commented-out alternative in {@code java.path.Cat1}. */
+    @Benchmark
+    public void filesCopy(Archive archive, Throughput throughput)
+    throws IOException {
+        for (TPath path : archive.paths) Files.copy(path, Archive.NULL);
+        throughput.megabytes += archive.megabytes;
+    }
+
+    /** Like {@code java.path.Cat2}. */
+    @Benchmark
+    public void channelLoop(Archive archive, Throughput throughput)
+    throws IOException {
+        for (TPath path : archive.paths) {
+            try (ReadableByteChannel src = Files.newByteChannel(path)) {
+                while (-1 != src.read(buf)) {
+                    buf.flip();
+                    channel.write(buf);
+                    buf.compact();
+                }
+            }
+        }
+        throughput.megabytes += archive.megabytes;
+    }
+
+    /** Like {@code java.path.Cat2 --channel}. */
+    @Benchmark
+    public void channelCat(Archive archive, Throughput throughput)
+    throws IOException {
+        for (TPath path : archive.paths) cat.cat(path, channel);
+        throughput.megabytes += archive.megabytes;
+    }
+}
@@ -3,28 +3,164 @@
 #set( $symbol_escape = '\' )
 package ${package}.java;
 
+import ${package}.java.util.Latencies;
+import ${package}.java.util.MountBudget;
+import ${package}.java.util.MountSnapshot;
+import ${package}.java.util.SyncStatistics;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import net.java.truevfs.access.TApplication;
 import net.java.truevfs.kernel.spec.FsSyncException;
 
 /**
  * An abstract class which configures the TrueVFS Access module.
- * 
+ * <p>
+ * If the system property {@value ${symbol_pound}STATISTICS_PROPERTY} is set or the system
+ * property {@value ${symbol_pound}JMX_PROPERTY} is set to {@code true}, then this class
+ * measures the wall time of the {@link ${symbol_pound}work} and {@link ${symbol_pound}sync} phases
+ * separately and counts the archive files synced and written by the sync
+ * phase and the total size and number of entries of the archive files
+ * written.
+ * Counting lists all entries of the mounted archive file systems before the
+ * sync phase, so it's not done by default.
+ * The time for counting is not included in either phase.
+ * If counting fails, then the failure gets printed to the standard error
+ * stream and the sync phase runs as usual.
+ * <p>
+ * If the system property {@value ${symbol_pound}JMX_PROPERTY} is set to {@code true}, then
+ * the {@link SyncStatistics} get registered as a JMX MXBean with the platform
+ * MBean server.
+ * If the system property {@value ${symbol_pound}STATISTICS_PROPERTY} is set, then a
+ * summary gets printed as a JSON object on a single line after the sync
+ * phase:
+ * If its value is {@code "-"}, then the summary gets printed to the standard
+ * error stream, otherwise it gets appended to the file with the given name.
+ * <p>
+ * If the system property {@value MountBudget${symbol_pound}BUDGET_PROPERTY} is set, then
+ * the heap footprint of the mounted archive file systems gets constrained by
+ * a {@link MountBudget} and its metrics get printed with the summary as the
+ * member {@code mountBudget}.
+ * <p>
+ * If the system property {@value Latencies${symbol_pound}LATENCIES_PROPERTY} is set to
+ * {@code true}, then the latencies of the file system operations get
+ * recorded by {@link Latencies} and a report with their percentiles gets
+ * printed to the standard error stream after the sync phase.
+ * The latencies also get printed with the summary as the member
+ * {@code latencies}.
+ *
  * @author Christian Schlichtherle
  */
 public abstract class Application<E extends Exception> extends TApplication<E> {
 
+    /** The name of the system property for printing the JSON summary. */
+    public static final String STATISTICS_PROPERTY
+            = "${package}.java.Application.statistics";
+
+    /**
+     * The name of the system property for registering the statistics as a
+     * JMX MXBean.
+     */
+    public static final String JMX_PROPERTY
+            = "${package}.java.Application.jmx";
+
+    private final SyncStatistics statistics
+            = new SyncStatistics(getClass().getName());
+    private long start;
+
+    /** Returns the statistics of the last run of this application. */
+    public SyncStatistics getStatistics() { return statistics; }
+
     /**
-     * Overridden to make the application wait until it gets interrupted.
-     * Uncomment this method if you want to test the JMX interface with the
-     * short living sample applications of this archetype.
+     * Runs the work phase only, without the setup and sync phases.
+     * This is used by {@link Batch} in order to run many commands in the
+     * same JVM while the archive file systems stay mounted.
+     *
+     * @param  args the command line arguments.
+     * @return the exit status.
      */
-    /*@Override
+    public final int execute(String[] args) throws E {
+        return work(args);
+    }
+
+    @Override
+    protected void setup() {
+        super.setup();
+        if (Boolean.getBoolean(JMX_PROPERTY)) statistics.register();
+        start = System.nanoTime();
+    }
+
+    /**
+     * Overridden to measure the sync phase.
+     * Uncomment the marked lines and set the system property
+     * {@value ${symbol_pound}JMX_PROPERTY} to {@code true} if you want to test the JMX
+     * interface with the short living sample applications of this archetype.
+     */
+    @Override
     protected void sync() throws FsSyncException {
-        System.out.println("Waiting until interrupt...");
+        final long workNanos = System.nanoTime() - start;
+        /*System.out.println("Waiting until interrupt...");
         try {
             Thread.sleep(Long.MAX_VALUE);
         } catch (InterruptedException ex) {
+        }*/
+        MountSnapshot before = null;
+        if (null != System.getProperty(STATISTICS_PROPERTY)
+                || Boolean.getBoolean(JMX_PROPERTY)) {
+            try {
+                before = MountSnapshot.take();
+            } catch (RuntimeException ex) {
+                // Never fail the application because of the instrumentation.
+                System.err.println("Cannot count the entries of the mounted archive file systems: " + ex);
+            }
+        }
+        final long syncStart = System.nanoTime();
+        try {
+            super.sync();
+        } finally {
+            if (null != before)
+                statistics.record(workNanos, System.nanoTime() - syncStart, before);
+            summary();
+            final Latencies latencies = Latencies.current();
+            if (null != latencies) {
+                final PrintStream err = System.err;
+                err.print(latencies.getReport());
+                err.flush();
+            }
+        }
+    }
+
+    private void summary() {
+        final String name = System.getProperty(STATISTICS_PROPERTY);
+        if (null == name) return;
+        // Merge the JSON objects into one by dropping the closing brace of
+        // the statistics and the braces around the latencies.
+        final StringBuilder sb = new StringBuilder(statistics.getJson());
+        sb.setLength(sb.length() - 1);
+        final MountBudget budget = MountBudget.current();
+        if (null != budget)
+            sb.append(",\"mountBudget\":").append(budget.getJson());
+        final Latencies latencies = Latencies.current();
+        if (null != latencies) {
+            final String members = latencies.getJson();
+            sb.append(',').append(members, 1, members.length() - 1);
+        }
+        final String json = sb.append('}').toString();
+        if ("-".equals(name)) {
+            final PrintStream err = System.err;
+            err.println(json);
+            err.flush();
+        } else {
+            try (Writer out = new OutputStreamWriter(
+                    new FileOutputStream(name, true), StandardCharsets.UTF_8)) {
+                out.write(json);
+                out.write(System.lineSeparator());
+            } catch (IOException ex) {
+                System.err.println(name + " (cannot write statistics: " + ex + ")");
+            }
         }
-        super.sync();
-    }*/
+    }
 }
@@ -0,0 +1,507 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java;
+
+import ${package}.java.util.Options;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import net.java.truevfs.access.TVFS;
+import net.java.truevfs.kernel.spec.FsSyncException;
+import net.java.truevfs.kernel.spec.FsSyncOptions;
+
+/**
+ * This command line utility runs many commands of the sample applications in
+ * the same JVM, so that the archive file systems stay mounted between the
+ * commands.
+ * <p>
+ * Each command is a line with the name of an {@link Application} class
+ * followed by its arguments, separated by white space.
+ * Arguments which contain white space can get enclosed in double quotes.
+ * Simple class names get resolved in the package {@code ${package}.java.file},
+ * e.g. {@code Cat archive.zip/README.txt}.
+ * The commands run concurrently on a bounded pool of threads.
+ * Anything which a command prints to {@link System${symbol_pound}out} gets buffered and
+ * written as a whole when the command has finished.
+ * <p>
+ * By default, the commands get read from the standard input and their
+ * output gets written to the standard output in the order of the commands.
+ * Errors get printed to the standard error output.
+ * With the option {@code --port=<n>}, the commands get read from connections
+ * to the given TCP port on the loopback interface instead.
+ * Each connection runs its commands in order and gets a response line with
+ * the exit status and the size of the output for each command, followed by
+ * the output.
+ * The command {@code exit} stops the server.
+ * <p>
+ * Instead of after each command, the archive file systems get synced when
+ * no command has been running for {@code --idle=<ms>} milliseconds, which
+ * defaults to one second, or when {@code --sync-interval=<ms>} milliseconds
+ * have passed since the last sync, which defaults to ten seconds.
+ * Syncing waits for all running commands to finish and defers new commands
+ * until it's done.
+ * The final sync happens when this application terminates.
+ * <p>
+ * The option {@code --threads=<n>} sets the number of threads and defaults
+ * to the number of available processors.
+ * At the end, the number of commands, failed commands and syncs and the
+ * throughput get printed to the standard error output.
+ * The exit status is zero if all commands have succeeded and one otherwise.
+ * <p>
+ * With the option {@code --baseline[=<n>]}, the first {@code <n>} read-only
+ * commands, which defaults to ten, get run again one after another, first in
+ * this process and then in a new JVM per command.
+ * Both runs are sequential, so the printed gain is the effect of reusing
+ * the process and keeping the archive file systems mounted only, without
+ * the effect of running the commands concurrently.
+ * Any command which fails or exits with a nonzero status in either run
+ * counts as a failed command.
+ * Read-only commands are {@code Cat}, {@code Grep}, {@code Head},
+ * {@code Range}, {@code Tail} and {@code Tree} without the option
+ * {@code --index}, so no command with side effects gets run twice.
+ * <p>
+ * Samples which bypass {@code System.out}, like {@code Cat2 --channel},
+ * write directly to the standard output of this process.
+ */
+public class Batch extends Application<IOException> {
+
+    private static final String PACKAGE = "${package}.java.file.";
+
+    /**
+     * The applications which don't modify any files, so they can get run
+     * again for the baseline.
+     */
+    private static final Set<String> READ_ONLY = new HashSet<>(Arrays.asList(
+            PACKAGE + "Cat", PACKAGE + "Grep", PACKAGE + "Head",
+            PACKAGE + "Range", PACKAGE + "Tail", PACKAGE + "Tree",
+            "${package}.java.path.Cat1", "${package}.java.path.Cat2",
+            "${package}.java.path.Tree"));
+
+    private final ConcurrentMap<String, Class<? extends Application<?>>> classes
+            = new ConcurrentHashMap<>();
+    private final ThreadLocal<OutputStream> outputs = new ThreadLocal<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final List<String> baseline = new ArrayList<>();
+    private volatile long lastActivity = System.nanoTime();
+    private volatile boolean dirty;
+    private long lastSync = System.nanoTime(), syncs;
+    private ExecutorService executor;
+
+    public static void main(String[] args) throws IOException {
+        System.exit(new Batch().run(args));
+    }
+
+    @Override
+    protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        final int threads = options.getInt("threads",
+                Runtime.getRuntime().availableProcessors());
+        final long idle = options.getLong("idle", 1000);
+        final long interval = options.getLong("sync-interval", 10000);
+        final int baselines = options.has("baseline")
+                ? options.getInt("baseline", 10)
+                : 0;
+        if (0 >= threads)
+            throw new IllegalArgumentException(threads + " (number of threads must be positive)");
+        if (0 >= idle || 0 >= interval)
+            throw new IllegalArgumentException("The idle time and the sync interval must be positive.");
+
+        executor = new ThreadPoolExecutor(threads, threads,
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(4 * threads),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        final ScheduledExecutorService syncer
+                = Executors.newSingleThreadScheduledExecutor();
+        syncer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() { maybeSync(idle, interval); }
+        }, 0, Math.max(10, Math.min(idle, interval) / 4), TimeUnit.MILLISECONDS);
+        final PrintStream stdout = System.out;
+        System.setOut(new PrintStream(new Router(stdout), false));
+        final long start = System.nanoTime();
+        try {
+            if (options.has("port"))
+                serve(options.getInt("port", 0));
+            else
+                batch(stdout, 4 * threads, baselines);
+        } finally {
+            System.setOut(stdout);
+            syncer.shutdownNow();
+            executor.shutdown();
+            finish(executor);
+            finish(syncer);
+        }
+        final long nanos = System.nanoTime() - start;
+        System.err.printf("%d commands, %d failed, %d syncs, %d ms, %.1f commands/s%n",
+                commands.get(), failures.get(), syncs, nanos / 1000000,
+                commands.get() * 1e9 / nanos);
+        if (!baseline.isEmpty()) {
+            final double inProcess = inProcess(stdout);
+            final double perProcess = perProcess();
+            System.err.printf("baseline of %d commands one after another: %.1f commands/s in this process, %.1f commands/s with one process per command, gain: %.1fx%n",
+                    baseline.size(), inProcess, perProcess,
+                    inProcess / perProcess);
+        }
+        return 0 == failures.get() ? 0 : 1;
+    }
+
+    /** Runs the commands from the standard input. */
+    private void batch(
+            final PrintStream stdout,
+            final int maxPending,
+            final int baselines)
+    throws IOException {
+        final BufferedReader in = new BufferedReader(
+                new InputStreamReader(System.in, Charset.defaultCharset()));
+        final Queue<Future<Result>> pending = new ArrayDeque<>();
+        for (String line; null != (line = in.readLine()); ) {
+            if (line.trim().isEmpty()) continue;
+            if (baseline.size() < baselines && readOnly(line))
+                baseline.add(line);
+            pending.add(submit(line));
+            while (maxPending < pending.size())
+                write(pending.remove(), stdout);
+        }
+        while (!pending.isEmpty()) write(pending.remove(), stdout);
+        stdout.flush();
+    }
+
+    private static void write(final Future<Result> future, final PrintStream out) {
+        final Result result = get(future);
+        final byte[] output = result.output.toByteArray();
+        out.write(output, 0, output.length);
+        if (null != result.failure)
+            System.err.println(result.command + ": " + result.failure);
+    }
+
+    /** Runs the commands from connections to the given port. */
+    private void serve(final int port) throws IOException {
+        final ExecutorService connections = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(
+                port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + server.getLocalSocketAddress());
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                } catch (IOException ex) {
+                    if (server.isClosed()) break;
+                    throw ex;
+                }
+                connections.execute(new Runnable() {
+                    @Override
+                    public void run() { connection(socket, server); }
+                });
+            }
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    private void connection(final Socket socket, final ServerSocket server) {
+        try (Socket s = socket) {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(
+                    s.getInputStream(), StandardCharsets.UTF_8));
+            final OutputStream out = s.getOutputStream();
+            for (String line; null != (line = in.readLine()); ) {
+                if (line.trim().isEmpty()) continue;
+                if ("exit".equals(line.trim())) {
+                    server.close();
+                    break;
+                }
+                final Result result = get(submit(line));
+                if (null != result.failure)
+                    System.err.println(result.command + ": " + result.failure);
+                out.write((result.status + " " + result.output.size() + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                result.output.writeTo(out);
+                out.flush();
+            }
+        } catch (IOException ex) {
+            System.err.println(socket + ": " + ex);
+        }
+    }
+
+    private Future<Result> submit(final String command) {
+        return executor.submit(new Callable<Result>() {
+            @Override
+            public Result call() { return execute(command); }
+        });
+    }
+
+    private static Result get(final Future<Result> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    /** Runs the given command on the current thread. */
+    private Result execute(final String command) {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int status = 1;
+        Exception failure = null;
+        lock.readLock().lock();
+        running.incrementAndGet();
+        outputs.set(output);
+        try {
+            final String[] words = split(command);
+            status = application(words[0])
+                    .execute(Arrays.copyOfRange(words, 1, words.length));
+        } catch (Exception ex) {
+            failure = ex;
+        } finally {
+            System.out.flush();
+            outputs.remove();
+            dirty = true;
+            lastActivity = System.nanoTime();
+            running.decrementAndGet();
+            lock.readLock().unlock();
+        }
+        commands.incrementAndGet();
+        if (null != failure || 0 != status) failures.incrementAndGet();
+        return new Result(command, status, output, failure);
+    }
+
+    /**
+     * Returns {@code true} if the given command doesn't modify any files, so
+     * it can get run again for the baseline.
+     */
+    private static boolean readOnly(final String command) {
+        final String[] words = split(command);
+        try {
+            return READ_ONLY.contains(load(words[0]).getName())
+                    && !new Options(Arrays.copyOfRange(words, 1, words.length))
+                        .has("index");
+        } catch (ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
+    private Application<?> application(final String name)
+    throws ReflectiveOperationException {
+        Class<? extends Application<?>> clazz = classes.get(name);
+        if (null == clazz) {
+            clazz = load(name);
+            classes.putIfAbsent(name, clazz);
+        }
+        return clazz.newInstance();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<? extends Application<?>> load(final String name)
+    throws ClassNotFoundException {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(name);
+        } catch (ClassNotFoundException ex) {
+            if (0 <= name.indexOf('.')) throw ex;
+            clazz = Class.forName(PACKAGE + name);
+        }
+        if (!Application.class.isAssignableFrom(clazz) || Batch.class == clazz)
+            throw new ClassNotFoundException(name + " (not an application)");
+        return (Class<? extends Application<?>>) clazz;
+    }
+
+    /** Splits the given command into words, respecting double quotes. */
+    private static String[] split(final String command) {
+        final List<String> words = new ArrayList<>();
+        final StringBuilder word = new StringBuilder();
+        boolean quoted = false, any = false;
+        for (int i = 0; i < command.length(); i++) {
+            final char c = command.charAt(i);
+            if ('"' == c) {
+                quoted = !quoted;
+                any = true;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (any) words.add(word.toString());
+                word.setLength(0);
+                any = false;
+            } else {
+                word.append(c);
+                any = true;
+            }
+        }
+        if (any) words.add(word.toString());
+        return words.toArray(new String[words.size()]);
+    }
+
+    /**
+     * Syncs the archive file systems if any command has run since the last
+     * sync and either no command has been running for the idle time or the
+     * sync interval has passed.
+     */
+    private void maybeSync(final long idle, final long interval) {
+        final long now = System.nanoTime();
+        if (!dirty) {
+            lastSync = now;
+            return;
+        }
+        if (0 == running.get()
+                && idle <= TimeUnit.NANOSECONDS.toMillis(now - lastActivity)
+                || interval <= TimeUnit.NANOSECONDS.toMillis(now - lastSync)) {
+            lock.writeLock().lock();
+            try {
+                dirty = false;
+                TVFS.sync(FsSyncOptions.SYNC);
+                syncs++;
+            } catch (FsSyncException ex) {
+                System.err.println(ex);
+            } finally {
+                lastSync = System.nanoTime();
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs the baseline commands one after another in this process and
+     * returns the throughput in commands per second.
+     * Their output gets discarded.
+     */
+    private double inProcess(final PrintStream stdout) {
+        System.setOut(new PrintStream(new Router(stdout), false));
+        final long start = System.nanoTime();
+        try {
+            for (final String command : baseline) {
+                final Result result = execute(command);
+                if (null != result.failure)
+                    System.err.println(command + ": " + result.failure);
+            }
+        } finally {
+            System.setOut(stdout);
+        }
+        return baseline.size() * 1e9 / (System.nanoTime() - start);
+    }
+
+    /**
+     * Runs the baseline commands one after another in a new JVM per command
+     * and returns the throughput in commands per second.
+     * Their output gets discarded.
+     */
+    private double perProcess() throws IOException {
+        final String java = new File(new File(
+                System.getProperty("java.home"), "bin"), "java").getPath();
+        final long start = System.nanoTime();
+        for (final String command : baseline) {
+            final String[] words = split(command);
+            final List<String> cmd = new ArrayList<>();
+            cmd.add(java);
+            cmd.add("-cp");
+            cmd.add(System.getProperty("java.class.path"));
+            try {
+                cmd.add(load(words[0]).getName());
+            } catch (ClassNotFoundException ex) {
+                throw new IOException(ex);
+            }
+            cmd.addAll(Arrays.asList(words).subList(1, words.length));
+            final Process process = new ProcessBuilder(cmd)
+                    .redirectErrorStream(true)
+                    .start();
+            final byte[] buf = new byte[8192];
+            while (0 <= process.getInputStream().read(buf)) {
+            }
+            try {
+                if (0 != process.waitFor()) {
+                    System.err.println(command + ": exit status " + process.exitValue());
+                    failures.incrementAndGet();
+                }
+            } catch (InterruptedException ex) {
+                throw (IOException) new InterruptedIOException().initCause(ex);
+            }
+        }
+        return baseline.size() * 1e9 / (System.nanoTime() - start);
+    }
+
+    private static void finish(final ExecutorService executor) {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Result {
+        final String command;
+        final int status;
+        final ByteArrayOutputStream output;
+        final Exception failure;
+
+        Result( final String command,
+                final int status,
+                final ByteArrayOutputStream output,
+                final Exception failure) {
+            this.command = command;
+            this.status = status;
+            this.output = output;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Routes the output to the buffer of the command which runs on the
+     * current thread or to the original standard output otherwise.
+     */
+    private final class Router extends OutputStream {
+        final OutputStream stdout;
+
+        Router(final OutputStream stdout) { this.stdout = stdout; }
+
+        private OutputStream out() {
+            final OutputStream out = outputs.get();
+            return null != out ? out : stdout;
+        }
+
+        @Override
+        public void write(int b) throws IOException { out().write(b); }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException { out().flush(); }
+    }
+}
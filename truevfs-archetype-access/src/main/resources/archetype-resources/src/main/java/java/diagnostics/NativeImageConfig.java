@@ -0,0 +1,150 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.diagnostics;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the reflection and resource configuration for building a GraalVM
+ * native image of this project.
+ * <p>
+ * TrueVFS locates its file system drivers, managers, buffer pools and key
+ * managers as services: It reads the provider configuration files in
+ * {@code META-INF/services} on the class path and instantiates the listed
+ * classes by reflection.
+ * A native image only supports this if these files are included as
+ * resources and the listed classes are registered for reflection.
+ * So this utility scans the class path for provider configuration files and
+ * writes {@code reflect-config.json} and {@code resource-config.json} to the
+ * given directory.
+ * The classes which the samples load or introspect by reflection get
+ * registered, too.
+ * <p>
+ * The build runs the main method of this utility class with the profile
+ * {@code native}.
+ */
+public final class NativeImageConfig {
+
+    private static final String SERVICES = "META-INF/services/";
+
+    private static final String[] REFLECTIVE = {
+        "${package}.java.util.Latencies",
+        "${package}.java.util.LatenciesMXBean",
+        "${package}.java.util.MountBudget",
+        "${package}.java.util.MountBudgetMXBean",
+        "${package}.java.util.SyncStatistics",
+        "${package}.java.util.SyncStatisticsMXBean",
+    };
+
+    private final Set<String> classes = new TreeSet<>();
+
+    /**
+     * Writes the configuration files to the directory given as the first
+     * parameter.
+     * The class path gets scanned from the system property
+     * {@code java.class.path}, so this needs to run in a forked JVM.
+     */
+    public static void main(String[] args) throws IOException {
+        if (1 != args.length)
+            throw new IllegalArgumentException("Usage: <directory>");
+        final NativeImageConfig config = new NativeImageConfig();
+        for (final String element : System.getProperty("java.class.path")
+                .split(Pattern.quote(File.pathSeparator)))
+            config.scan(new File(element));
+        final File dir = new File(args[0]);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException(dir + " (cannot create directory)");
+        try (Writer out = writer(new File(dir, "reflect-config.json"))) {
+            config.reflect(out);
+        }
+        try (Writer out = writer(new File(dir, "resource-config.json"))) {
+            config.resources(out);
+        }
+    }
+
+    private NativeImageConfig() {
+        for (final String name : REFLECTIVE) classes.add(name);
+    }
+
+    private static Writer writer(File file) throws IOException {
+        return new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8);
+    }
+
+    /** Scans the given JAR file or class directory. */
+    private void scan(final File element) throws IOException {
+        if (element.isDirectory()) {
+            final File[] files = new File(element, SERVICES).listFiles();
+            if (null == files) return;
+            for (final File file : files)
+                if (file.isFile())
+                    try (InputStream in = new FileInputStream(file)) {
+                        parse(in);
+                    }
+        } else if (element.isFile()) {
+            try (JarFile jar = new JarFile(element)) {
+                for (final Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements(); ) {
+                    final JarEntry entry = e.nextElement();
+                    final String name = entry.getName();
+                    if (!entry.isDirectory()
+                            && name.startsWith(SERVICES)
+                            && name.indexOf('/', SERVICES.length()) < 0)
+                        try (InputStream in = jar.getInputStream(entry)) {
+                            parse(in);
+                        }
+                }
+            }
+        }
+    }
+
+    /** Parses a provider configuration file. */
+    private void parse(final InputStream in) throws IOException {
+        final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8));
+        for (String line; null != (line = reader.readLine()); ) {
+            final int comment = line.indexOf('${symbol_pound}');
+            if (0 <= comment) line = line.substring(0, comment);
+            line = line.trim();
+            if (!line.isEmpty()) classes.add(line);
+        }
+    }
+
+    private void reflect(final Writer out) throws IOException {
+        out.write("[\n");
+        int i = 0;
+        for (final String name : classes) {
+            out.write(0 == i++ ? "  " : ",\n  ");
+            out.write("{ \"name\": \"" + name + "\", "
+                    + "\"allDeclaredConstructors\": true, "
+                    + "\"allPublicMethods\": true }");
+        }
+        out.write("\n]\n");
+    }
+
+    private void resources(final Writer out) throws IOException {
+        out.write("{\n"
+                + "  \"resources\": {\n"
+                + "    \"includes\": [\n"
+                + "      { \"pattern\": \"META-INF/services/.*\" },\n"
+                + "      { \"pattern\": \".*\\\\.properties\" }\n"
+                + "    ]\n"
+                + "  }\n"
+                + "}\n");
+    }
+}
@@ -0,0 +1,282 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.diagnostics;
+
+import ${package}.java.Application;
+import ${package}.java.file.Cat;
+import ${package}.java.file.Copy;
+import ${package}.java.file.Tree;
+import ${package}.java.util.CorpusGenerator;
+import ${package}.java.util.Options;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TVFS;
+
+/**
+ * Runs the {@link Cat}, {@link Copy} and {@link Tree} command line utilities
+ * on a generated corpus, records their wall time and throughput and fails if
+ * any of them is slower than a floor or than a stored baseline by more than
+ * a budget factor.
+ * <p>
+ * The corpus gets generated by a {@link CorpusGenerator} in the file
+ * {@code corpus.zip} in the work directory argument, so this gate doesn't
+ * need any network access.
+ * Each utility runs in this JVM for a number of rounds and the fastest round
+ * counts, which evens out the JIT compilation and any noise on the build
+ * machine.
+ * The bytes are the bytes printed by {@link Cat} and {@link Tree} and the
+ * uncompressed bytes of the corpus for {@link Copy}.
+ * <p>
+ * The floor is the minimum corpus throughput of each utility, that is the
+ * uncompressed bytes of the corpus divided by the wall time of the fastest
+ * round.
+ * It doesn't depend on a stored baseline, so it always applies.
+ * Its default is generous enough for any build machine and only catches
+ * regressions by orders of magnitude, e.g. an accidental rewrite of the
+ * whole archive per entry or an unbuffered stream.
+ * <p>
+ * The results get written to a properties file with the keys
+ * {@code <utility>.millis}, {@code <utility>.bytes} and
+ * {@code <utility>.bytesPerSecond}.
+ * The keys {@code machine.*} describe the build machine and the JVM.
+ * The baseline is a results file of an earlier run on the same build
+ * machine, which gets recorded with the option {@code --record}.
+ * If the baseline file doesn't exist, then only the floor applies.
+ * If the baseline has been recorded on another machine, then a warning gets
+ * printed, because the comparison is meaningless then.
+ * <p>
+ * The following options are supported:
+ * <ul>
+ * <li>{@code --results=<file>}: the results file, defaults to
+ *     {@code throughput.properties} in the work directory.
+ * <li>{@code --baseline=<file>}: the baseline file.
+ * <li>{@code --budget=<factor>}: the maximum ratio of the wall time of a
+ *     utility to its baseline, defaults to 2.
+ * <li>{@code --floor=<bytes/s>}: the minimum corpus throughput of each
+ *     utility, defaults to 1000000.
+ * <li>{@code --record[=true|false]}: writes the results to the baseline
+ *     file, too.
+ * <li>{@code --report-only[=true|false]}: prints the comparison with the
+ *     floor and the baseline, but doesn't fail.
+ * <li>{@code --entries=<n>}: the number of entries in the corpus, defaults
+ *     to 1000.
+ * <li>{@code --size=<bytes>}: the mean size of the entries, defaults to
+ *     65536.
+ * <li>{@code --rounds=<n>}: the number of rounds, defaults to three.
+ * </ul>
+ */
+public final class ThroughputGate {
+
+    private static final String[] UTILITIES = { "cat", "copy", "tree" };
+
+    public static void main(String[] args) throws Exception {
+        final Options options = new Options(args);
+        args = options.operands();
+        if (1 != args.length)
+            throw new IllegalArgumentException("Usage: ThroughputGate [options] <work directory>");
+        final File work = new File(args[0]);
+        final File results = new File(options.get("results",
+                new File(work, "throughput.properties").getPath()));
+        final String baselineName = options.get("baseline", null);
+        final File baseline = null != baselineName ? new File(baselineName) : null;
+        final double budget = Double.parseDouble(options.get("budget", "2"));
+        if (!(1 <= budget))
+            throw new IllegalArgumentException(budget + " (budget must be at least one)");
+        final long floor = options.getLong("floor", 1000000);
+        if (0 > floor)
+            throw new IllegalArgumentException(floor + " (floor must not be negative)");
+        final long entries = options.getLong("entries", 1000);
+        final long size = options.getLong("size", 64 * 1024);
+        final int rounds = options.getInt("rounds", 3);
+        if (0 >= rounds)
+            throw new IllegalArgumentException(rounds + " (number of rounds must be positive)");
+
+        // Generate the corpus.
+        if (!work.isDirectory() && !work.mkdirs())
+            throw new IOException(work + " (cannot create directory)");
+        final TFile corpus = new TFile(work, "corpus.zip");
+        corpus.rm_r();
+        final List<String> names = new ArrayList<>();
+        final long bytes = new CorpusGenerator()
+                .entries(entries)
+                .meanSize(size)
+                .generate(corpus, names);
+        TVFS.umount();
+        final String[] paths = new String[names.size()];
+        for (int i = 0; i < paths.length; i++)
+            paths[i] = new File(corpus, names.get(i)).getPath();
+        final TFile copies = new TFile(work, "copies");
+        if (!copies.isDirectory()) copies.mkdir();
+
+        // Measure the utilities.
+        final long[] millis = new long[UTILITIES.length];
+        final long[] counts = new long[UTILITIES.length];
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < UTILITIES.length; i++) {
+                new TFile(copies, corpus.getName()).rm_r();
+                final CountingOutputStream out = new CountingOutputStream();
+                final long nanos = time(UTILITIES[i], out, paths,
+                        corpus.getPath(), copies.getPath());
+                if (0 == round || nanos / 1000000 < millis[i])
+                    millis[i] = nanos / 1000000;
+                counts[i] = "copy".equals(UTILITIES[i]) ? bytes : out.count;
+            }
+        }
+
+        // Compare with the baseline and write the results.
+        final Properties previous = new Properties();
+        if (null != baseline && baseline.isFile())
+            try (InputStream in = new FileInputStream(baseline)) {
+                previous.load(in);
+            }
+        final Properties current = new Properties();
+        machine(current);
+        for (final String key : current.stringPropertyNames()) {
+            final String base = previous.getProperty(key);
+            if (null != base && !base.equals(current.getProperty(key)))
+                System.out.printf("Warning: The baseline has been recorded with %s=%s, but this is %s.%n",
+                        key, base, current.getProperty(key));
+        }
+        current.setProperty("corpus.entries", Long.toString(entries));
+        current.setProperty("corpus.size", Long.toString(size));
+        if (!previous.isEmpty()
+                && (!current.getProperty("corpus.entries").equals(previous.getProperty("corpus.entries"))
+                    || !current.getProperty("corpus.size").equals(previous.getProperty("corpus.size"))))
+            throw new IllegalArgumentException(baseline + " (baseline has been recorded for a different corpus)");
+        int failures = 0;
+        for (int i = 0; i < UTILITIES.length; i++) {
+            final String utility = UTILITIES[i];
+            final long rate = counts[i] * 1000 / Math.max(1, millis[i]);
+            current.setProperty(utility + ".millis", Long.toString(millis[i]));
+            current.setProperty(utility + ".bytes", Long.toString(counts[i]));
+            current.setProperty(utility + ".bytesPerSecond", Long.toString(rate));
+            final long corpusRate = bytes * 1000 / Math.max(1, millis[i]);
+            boolean failed = corpusRate < floor;
+            final String base = previous.getProperty(utility + ".millis");
+            final String comparison;
+            if (null == base) {
+                comparison = "no baseline";
+            } else {
+                final long limit = (long) (Long.parseLong(base) * budget);
+                if (millis[i] > limit) failed = true;
+                comparison = "baseline " + base + " ms, limit " + limit + " ms";
+            }
+            if (failed) failures++;
+            System.out.printf("%-5s %8d ms %12d bytes %8.1f MB/s (corpus %.1f MB/s, floor %.1f MB/s, %s) %s%n",
+                    utility, millis[i], counts[i], rate / 1e6,
+                    corpusRate / 1e6, floor / 1e6, comparison,
+                    failed ? "FAILED" : "OK");
+        }
+        store(current, results);
+        if (flag(options, "record")) {
+            if (null == baseline)
+                throw new IllegalArgumentException("--record requires --baseline");
+            store(current, baseline);
+        }
+        if (0 < failures) {
+            System.out.printf("%d of %d utilities fell below the floor of %d bytes/s or exceeded their budget of %s times the baseline.%n",
+                    failures, UTILITIES.length, floor, budget);
+            if (!flag(options, "report-only")) System.exit(1);
+        }
+    }
+
+    /**
+     * Returns the value of the named boolean option, which is {@code true}
+     * if it's present without a value.
+     */
+    private static boolean flag(final Options options, final String name) {
+        return Boolean.parseBoolean(options.get(name,
+                Boolean.toString(options.has(name))));
+    }
+
+    /** Describes the build machine and the JVM. */
+    private static void machine(final Properties properties) {
+        properties.setProperty("machine.os", System.getProperty("os.name")
+                + " " + System.getProperty("os.version")
+                + " " + System.getProperty("os.arch"));
+        properties.setProperty("machine.processors",
+                Integer.toString(Runtime.getRuntime().availableProcessors()));
+        properties.setProperty("machine.jvm", System.getProperty("java.vm.name")
+                + " " + System.getProperty("java.runtime.version"));
+    }
+
+    /**
+     * Runs the named utility once with the standard output redirected to the
+     * given stream and returns its wall time in nanoseconds, including the
+     * time for unmounting all archive file systems, which commits any
+     * changes.
+     */
+    private static long time(
+            final String utility,
+            final OutputStream out,
+            final String[] paths,
+            final String corpus,
+            final String copies)
+    throws IOException {
+        final Application<IOException> application;
+        final String[] args;
+        switch (utility) {
+            case "cat":
+                application = new Cat();
+                args = paths;
+                break;
+            case "copy":
+                application = new Copy();
+                args = new String[] { corpus, copies };
+                break;
+            case "tree":
+                application = new Tree();
+                args = new String[] { corpus };
+                break;
+            default:
+                throw new AssertionError(utility);
+        }
+        final PrintStream stdout = System.out;
+        final PrintStream redirected = new PrintStream(out, false);
+        System.setOut(redirected);
+        final long start = System.nanoTime();
+        final int status;
+        try {
+            status = application.execute(args);
+            TVFS.umount();
+            redirected.flush();
+        } finally {
+            System.setOut(stdout);
+        }
+        final long nanos = System.nanoTime() - start;
+        if (0 != status)
+            throw new IOException(utility + " (exit status " + status + ")");
+        return nanos;
+    }
+
+    private static void store(final Properties properties, final File file)
+    throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs())
+            throw new IOException(parent + " (cannot create directory)");
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, "Wall time and throughput of the fastest round");
+        }
+    }
+
+    /** Counts and discards the bytes written. */
+    private static final class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) { count++; }
+
+        @Override
+        public void write(byte[] b, int off, int len) { count += len; }
+    }
+}
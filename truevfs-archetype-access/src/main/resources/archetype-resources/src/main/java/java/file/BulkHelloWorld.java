@@ -0,0 +1,113 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.file;
+
+import ${package}.java.Application;
+import ${package}.java.util.Options;
+import ${package}.java.util.ParallelZipWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileOutputStream;
+import net.java.truevfs.access.TVFS;
+
+/**
+ * Creates two ZIP files with many entries named
+ * {@code "dir<i>/HälloWörld<j>.txt"} in the current directory and compares
+ * the throughput of the sequential and the parallel writer.
+ * <p>
+ * The ZIP file {@code "bulk-sequential.zip"} gets written by the TrueVFS
+ * Kernel like in {@link HelloWorld}, so each entry gets deflated on the
+ * calling thread.
+ * The ZIP file {@code "bulk-parallel.zip"} gets written by a
+ * {@link ParallelZipWriter}, so the entries get deflated on a pool of worker
+ * threads.
+ * Both ZIP files get synced once at the end and both measurements include
+ * this.
+ * Existing files with these names get overwritten.
+ * <p>
+ * The option {@code --entries=<n>} sets the number of entries and defaults
+ * to 10000.
+ * The option {@code --size=<bytes>} sets the size of each entry and
+ * defaults to 4096.
+ * The option {@code --threads=<n>} sets the number of worker threads and
+ * defaults to the number of available processors.
+ * The option {@code --level=<n>} sets the compression level and defaults to
+ * the default level of the {@link Deflater}.
+ */
+public class BulkHelloWorld extends Application<IOException> {
+
+    public static void main(String[] args) throws IOException {
+        System.exit(new BulkHelloWorld().run(args));
+    }
+
+    @Override
+    protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        final int entries = options.getInt("entries", 10000);
+        final int size = options.getInt("size", 4096);
+        final int threads = options.getInt("threads",
+                Runtime.getRuntime().availableProcessors());
+        final int level = options.getInt("level", Deflater.DEFAULT_COMPRESSION);
+
+        // The contents of each entry are the text "Hello world!" with the
+        // index of the entry, repeated until the size is reached.
+        final byte[][] contents = new byte[entries][];
+        for (int i = 0; i < entries; i++) {
+            final byte[] line = ("Hello world " + i + "!\n")
+                    .getBytes(Charset.defaultCharset());
+            contents[i] = new byte[size];
+            for (int j = 0; j < size; j++)
+                contents[i][j] = line[j % line.length];
+        }
+        final long now = System.currentTimeMillis();
+
+        // Write the entries sequentially through the TrueVFS Kernel.
+        final TFile sequential = new TFile("bulk-sequential.zip");
+        if (sequential.exists()) sequential.rm_r();
+        long start = System.nanoTime();
+        for (int i = 0; i < entries; i++) {
+            final TFile entry = new TFile(sequential, name(i));
+            try (OutputStream out = new TFileOutputStream(entry)) {
+                out.write(contents[i]);
+            }
+        }
+        TVFS.umount();
+        report("sequential", entries, (long) entries * size,
+                System.nanoTime() - start);
+
+        // Write the entries in parallel.
+        // This is a plain file, so it doesn't get mounted.
+        final File parallel = new File("bulk-parallel.zip");
+        start = System.nanoTime();
+        try (ParallelZipWriter writer = new ParallelZipWriter(
+                new BufferedOutputStream(new FileOutputStream(parallel), 64 * 1024),
+                threads, 4 * threads, level)) {
+            for (int i = 0; i < entries; i++)
+                writer.write(name(i), contents[i], now);
+        }
+        report("parallel", entries, (long) entries * size,
+                System.nanoTime() - start);
+        return 0;
+    }
+
+    private static String name(int i) {
+        return "dir" + i % 100 + "/HälloWörld" + i + ".txt";
+    }
+
+    private static void report(
+            final String name,
+            final long entries,
+            final long bytes,
+            final long nanos) {
+        System.out.printf("%-10s %8d ms %10.0f entries/s %8.1f MB/s%n",
+                name, nanos / 1000000,
+                entries * 1e9 / nanos, bytes * 1e3 / nanos);
+    }
+}
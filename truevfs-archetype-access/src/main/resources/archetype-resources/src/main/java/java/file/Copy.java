@@ -4,6 +4,7 @@
 package ${package}.java.file;
 
 import ${package}.java.Application;
+import ${package}.java.util.Options;
 import net.java.truevfs.access.TFile;
 import java.io.IOException;
 import net.java.truevfs.access.TConfig;
@@ -20,6 +21,13 @@ import net.java.truevfs.access.TConfig;
  * present on the run time class path and the destination path name is
  * {@code archive.zip}, a ZIP file with this name gets created unless it
  * already exists.
+ * <p>
+ * With the option {@code --threads=<n>}, the files get copied by a
+ * {@link ParallelCopy} with {@code <n>} worker threads.
+ * The option {@code --queue=<n>} sets the maximum number of pending files
+ * and defaults to four times the number of threads.
+ * The option {@code --staging=<bytes>} sets the maximum size of a file which
+ * gets read into the heap before writing it and defaults to one MiB.
  *
  * @author  Christian Schlichtherle
  */
@@ -31,6 +39,9 @@ public class Copy extends Application<IOException> {
 
     @Override
     protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        args = options.operands();
+
         // Setup the file operands.
         TFile src = new TFile(args[0]);
         TFile dst = new TFile(args[1]);
@@ -52,7 +63,17 @@ public class Copy extends Application<IOException> {
             dst = new TFile(dst, src.getName());*/
 
         // Perform a recursive archive copy.
-        src.cp_rp(dst);
+        if (options.has("threads")) {
+            final int threads = options.getInt("threads",
+                    Runtime.getRuntime().availableProcessors());
+            new ParallelCopy(
+                    threads,
+                    options.getInt("queue", 4 * threads),
+                    options.getInt("staging", 1024 * 1024))
+                    .cp_rp(src, dst);
+        } else {
+            src.cp_rp(dst);
+        }
 
         return 0;
     }
@@ -0,0 +1,76 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.file;
+
+import ${package}.java.Application;
+import ${package}.java.util.CorpusGenerator;
+import ${package}.java.util.Options;
+import java.io.IOException;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TVFS;
+
+/**
+ * This command line utility generates a synthetic corpus of entries in its
+ * archive file argument for benchmarks and load tests.
+ * The archive type is determined by the extension of the argument, e.g.
+ * {@code corpus.zip}, {@code corpus.jar} or {@code corpus.tar.gz}.
+ * The corpus is deterministic, so two runs with the same options produce the
+ * same entries.
+ * <p>
+ * The following options are supported:
+ * <ul>
+ * <li>{@code --entries=<n>}: the number of entries, defaults to 1000.
+ * <li>{@code --size=<bytes>}: the mean size of the entries, defaults to 4096.
+ * <li>{@code --max-size=<bytes>}: the maximum size of the entries.
+ * <li>{@code --distribution=fixed|uniform|exponential|lognormal}: the
+ *     distribution of the entry sizes, defaults to {@code fixed}.
+ * <li>{@code --depth=<n>}: the number of directory levels, defaults to 2.
+ * <li>{@code --fanout=<n>}: the number of subdirectories per directory and
+ *     nested archive files per nesting level, defaults to 10.
+ * <li>{@code --compressibility=<percent>}: zero results in random bytes,
+ *     one hundred results in repeated text, defaults to 50.
+ * <li>{@code --nesting=<n>}: the number of levels of nested archive files,
+ *     defaults to 0.
+ * <li>{@code --nested-formats=<ext>,...}: the extensions of the nested
+ *     archive files per level, defaults to {@code zip}.
+ * <li>{@code --seed=<n>}: the seed, defaults to 0.
+ * </ul>
+ * For example, {@code --entries=1000000 --size=100} generates a million tiny
+ * entries whereas {@code --entries=3 --size=2000000000} generates a few
+ * multi-GB entries.
+ */
+public class Corpus extends Application<IOException> {
+
+    public static void main(String[] args) throws IOException {
+        System.exit(new Corpus().run(args));
+    }
+
+    @Override
+    protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        args = options.operands();
+        if (1 != args.length)
+            throw new IllegalArgumentException("Usage: Corpus [options] <archive>");
+        final TFile target = new TFile(args[0]);
+        final CorpusGenerator generator = new CorpusGenerator()
+                .entries(options.getLong("entries", 1000))
+                .meanSize(options.getLong("size", 4096))
+                .maxSize(options.getLong("max-size", Long.MAX_VALUE))
+                .distribution(CorpusGenerator.distribution(
+                    options.get("distribution", "fixed")))
+                .depth(options.getInt("depth", 2))
+                .fanout(options.getInt("fanout", 10))
+                .compressibility(options.getInt("compressibility", 50))
+                .nesting(options.getInt("nesting", 0))
+                .nestedFormats(options.get("nested-formats", "zip").split(","))
+                .seed(options.getLong("seed", 0));
+        final long start = System.nanoTime();
+        final long bytes = generator.generate(target, null);
+        TVFS.umount();
+        final long nanos = System.nanoTime() - start;
+        System.err.printf("%s: %d bytes in %d ms (%.1f MB/s)%n",
+                target, bytes, nanos / 1000000, bytes * 1000.0 / nanos);
+        return 0;
+    }
+}
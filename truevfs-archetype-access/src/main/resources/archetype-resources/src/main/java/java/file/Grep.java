@@ -0,0 +1,278 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.file;
+
+import ${package}.java.Application;
+import ${package}.java.util.ByteMatcher;
+import ${package}.java.util.FileTreeModel;
+import ${package}.java.util.Options;
+import ${package}.java.util.Stopwatch;
+import ${package}.java.util.TreeModel;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+
+/**
+ * This command line utility prints the lines which contain the string given
+ * as the first argument in the files in the directory trees of the remaining
+ * file or directory arguments, which default to the current directory.
+ * Like {@link Tree}, this utility walks into archive files, including nested
+ * archive files, so each line gets printed with the full path name of the
+ * entry, e.g. {@code archive.zip/dir/entry.log:line}.
+ * <p>
+ * The calling thread walks the directory trees in sorted order and submits a
+ * job for each file to a bounded pool of worker threads, which search the
+ * files as streams with a {@link ByteMatcher}.
+ * The string gets encoded in the default character set, so the files must
+ * use a compatible encoding.
+ * The output is printed in the order of the walk, so it's the same with any
+ * number of threads.
+ * Files which contain a NUL byte in their first block are considered to be
+ * binary and get skipped.
+ * The exit status is zero if any line has been found, one if no line has
+ * been found and two if any file or directory could not get read.
+ * <p>
+ * The option {@code --files-with-matches} prints only the path name of each
+ * file which contains the string, like {@code grep -l}, and stops reading
+ * the file at the first match.
+ * The option {@code --max-count=<n>} stops reading each file after {@code n}
+ * matching lines.
+ * The option {@code --text} searches binary files, too.
+ * The option {@code --threads=<n>} sets the number of worker threads and
+ * defaults to the number of available processors.
+ * With the option {@code --stats}, the number of searched and skipped files,
+ * the number of matching lines, the throughput and the elapsed time get
+ * printed to the standard error output.
+ */
+public class Grep extends Application<IOException> {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int MAX_LINE_SIZE = 1024 * 1024;
+
+    private final TreeModel<File> model = new FileTreeModel();
+    private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() { return new byte[BLOCK_SIZE]; }
+    };
+    private ByteMatcher matcher;
+    private boolean listOnly, text;
+    private int maxCount;
+    private long files, skipped, matches, bytes;
+    private int status = 1;
+
+    public static void main(String[] args) throws IOException {
+        System.exit(new Grep().run(args));
+    }
+
+    @Override
+    protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        listOnly = options.has("files-with-matches");
+        text = options.has("text");
+        maxCount = options.getInt("max-count", Integer.MAX_VALUE);
+        final int threads = options.getInt("threads",
+                Runtime.getRuntime().availableProcessors());
+        if (0 >= maxCount)
+            throw new IllegalArgumentException(maxCount + " (maximum count must be positive)");
+        if (0 >= threads)
+            throw new IllegalArgumentException(threads + " (number of threads must be positive)");
+        args = options.operands();
+        if (0 >= args.length)
+            throw new IllegalArgumentException("Usage: [--files-with-matches] [--max-count=<n>] [--text] [--threads=<n>] [--stats] <string> [<path>...]");
+        final byte[] pattern = args[0].getBytes(Charset.defaultCharset());
+        if (0 <= indexOf(pattern, (byte) '\n'))
+            throw new IllegalArgumentException("The string must not contain a line separator.");
+        matcher = new ByteMatcher(pattern);
+        final String[] paths = 1 < args.length
+                ? Arrays.copyOfRange(args, 1, args.length)
+                : new String[] { "." };
+
+        final Stopwatch stopwatch = new Stopwatch();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(4 * threads),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        final Queue<Future<Result>> pending = new ArrayDeque<>();
+        final PrintStream out = System.out;
+        try {
+            for (final String path : paths)
+                walk(new TFile(path), executor, pending, 8 * threads, out);
+            while (!pending.isEmpty()) print(pending.remove(), out);
+        } finally {
+            executor.shutdownNow();
+            out.flush();
+        }
+        if (options.has("stats"))
+            System.err.printf("%d files searched, %d skipped, %d matches, %.1f MB, %s%n",
+                    files, skipped, matches, bytes / 1e6, stopwatch);
+        return status;
+    }
+
+    private void walk(
+            final File node,
+            final ThreadPoolExecutor executor,
+            final Queue<Future<Result>> pending,
+            final int maxPending,
+            final PrintStream out)
+    throws IOException {
+        if (model.isDirectory(node)) {
+            try {
+                for (final File member : model.children(node))
+                    walk(member, executor, pending, maxPending, out);
+            } catch (IOException ex) {
+                error(ex);
+            }
+        } else if (node.isFile()) {
+            pending.add(executor.submit(new Callable<Result>() {
+                @Override
+                public Result call() throws IOException {
+                    return search(node);
+                }
+            }));
+            while (maxPending < pending.size()) print(pending.remove(), out);
+        } else if (!model.exists(node)) {
+            error(new IOException(node + " (no such file or directory)"));
+        }
+    }
+
+    private void print(final Future<Result> future, final PrintStream out) {
+        final Result result;
+        try {
+            result = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        } catch (ExecutionException ex) {
+            error(ex.getCause());
+            return;
+        }
+        if (result.binary) {
+            skipped++;
+            return;
+        }
+        files++;
+        bytes += result.bytes;
+        matches += result.matches;
+        if (0 < result.matches && 1 == status) status = 0;
+        final byte[] output = result.output.toByteArray();
+        out.write(output, 0, output.length);
+    }
+
+    private void error(final Throwable ex) {
+        System.err.println(ex);
+        status = 2;
+    }
+
+    /** Searches the given file on the current thread. */
+    private Result search(final File file) throws IOException {
+        final Result result = new Result();
+        final byte[] prefix = file.getPath().getBytes(Charset.defaultCharset());
+        byte[] buf = buffers.get();
+        try (InputStream in = new TFileInputStream(file)) {
+            int start = 0, end = 0;
+            boolean eof = false;
+            while (!eof) {
+                if (buf.length == end) {
+                    if (0 < start) {
+                        System.arraycopy(buf, start, buf, 0, end - start);
+                        end -= start;
+                        start = 0;
+                    } else if (buf.length < MAX_LINE_SIZE) {
+                        buffers.set(buf = Arrays.copyOf(buf, 2 * buf.length));
+                    }
+                }
+                int limit;
+                if (buf.length == end) {
+                    // The line is too long, so split it.
+                    limit = end;
+                } else {
+                    final int n = in.read(buf, end, buf.length - end);
+                    if (0 > n) {
+                        eof = true;
+                    } else {
+                        if (!text && 0 == result.bytes
+                                && 0 <= indexOf(buf, end, end + n, (byte) 0)) {
+                            result.binary = true;
+                            return result;
+                        }
+                        result.bytes += n;
+                        end += n;
+                    }
+                    // Only search complete lines.
+                    limit = eof ? end : lastIndexOf(buf, start, end, (byte) '\n') + 1;
+                    if (limit <= start) continue;
+                }
+                for (int i = start; i < limit; ) {
+                    final int hit = matcher.indexOf(buf, i, limit);
+                    if (0 > hit) break;
+                    final int lineStart = lastIndexOf(buf, i, hit, (byte) '\n') + 1;
+                    int lineEnd = indexOf(buf, hit + matcher.length(), limit, (byte) '\n');
+                    if (0 > lineEnd) lineEnd = limit;
+                    result.matches++;
+                    if (listOnly) {
+                        result.output.write(prefix);
+                        result.output.write('\n');
+                        return result;
+                    }
+                    result.output.write(prefix);
+                    result.output.write(':');
+                    result.output.write(buf, lineStart, lineEnd - lineStart);
+                    result.output.write('\n');
+                    if (maxCount <= result.matches) return result;
+                    i = lineEnd + 1;
+                }
+                start = limit;
+            }
+        }
+        return result;
+    }
+
+    private static int indexOf(final byte[] buf, final byte b) {
+        return indexOf(buf, 0, buf.length, b);
+    }
+
+    private static int indexOf(
+            final byte[] buf,
+            final int from,
+            final int to,
+            final byte b) {
+        for (int i = from; i < to; i++) if (b == buf[i]) return i;
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the given byte in the
+     * given region or {@code from - 1} if there is none.
+     */
+    private static int lastIndexOf(
+            final byte[] buf,
+            final int from,
+            final int to,
+            final byte b) {
+        int i = to - 1;
+        while (from <= i && b != buf[i]) i--;
+        return Math.max(i, from - 1);
+    }
+
+    private static final class Result {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        long bytes;
+        int matches;
+        boolean binary;
+    }
+}
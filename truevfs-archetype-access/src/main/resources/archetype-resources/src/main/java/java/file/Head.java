@@ -0,0 +1,36 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.file;
+
+import ${package}.java.util.Options;
+import java.io.IOException;
+
+/**
+ * This command line utility prints the first bytes of the files named by the
+ * arguments on the standard output.
+ * <p>
+ * Only the requested bytes get read, so this is fast for any size of an
+ * archive entry.
+ * The option {@code --bytes=<n>} sets the number of bytes and defaults to
+ * 4096.
+ * With the option {@code --stats}, the latency gets printed to the standard
+ * error output, see {@link Range}.
+ */
+public class Head extends Range {
+
+    public static void main(String[] args) throws IOException {
+        System.exit(new Head().run(args));
+    }
+
+    @Override
+    protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        args = options.operands();
+        if (0 >= args.length)
+            throw new IllegalArgumentException("Usage: [--bytes=<n>] [--stats] <path>...");
+        copy(args, 0, options.getLong("bytes", 4096), false,
+                options.has("stats"));
+        return 0;
+    }
+}
@@ -4,10 +4,20 @@
 package ${package}.java.file;
 
 import ${package}.java.Application;
+import ${package}.java.util.Options;
+import ${package}.java.util.ZipDirectory;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import net.java.truevfs.access.TConfig;
 import net.java.truevfs.access.TFile;
 import net.java.truevfs.access.TFileWriter;
+import net.java.truevfs.access.TVFS;
+import net.java.truevfs.kernel.spec.FsAccessOption;
 
 /**
  * Creates a ZIP file with the name {@code "archive.zip"} in the current
@@ -17,7 +27,22 @@ import net.java.truevfs.access.TFileWriter;
  * gets encoded using the JVM's default character set.
  * If the entry already exists, it will get overwritten.
  * If present, any other ZIP file entries will remain unchanged.
- * 
+ * <p>
+ * By default, updating an existing ZIP file rewrites it to a temporary file
+ * which then replaces it, so all existing entries get copied.
+ * With the option {@code --grow}, the new entry and a new central directory
+ * get appended to the ZIP file instead, so existing entries never get
+ * copied.
+ * However, the superseded entry data and central directories remain in the
+ * ZIP file as waste.
+ * With the option {@code --compact}, the ZIP file gets compacted after the
+ * update, which rewrites it without the waste.
+ * The option {@code --waste=<percent>} sets the share of the waste in the
+ * size of the ZIP file above which it gets compacted anyway and defaults to
+ * 50.
+ * The bytes written by each update and the waste get printed to the
+ * standard error stream.
+ *
  * @author  Christian Schlichtherle
  */
 public class HelloWorld extends Application<IOException> {
@@ -28,17 +53,88 @@ public class HelloWorld extends Application<IOException> {
 
     @Override
     protected int work(String[] args) throws IOException {
-        // By default, ZIP files use character set IBM437 to encode entry names
-        // whereas JAR files use UTF-8.
-        // This can be changed by configuring the respective archive driver,
-        // see Javadoc for TApplication.setup().
-        final Writer writer = new TFileWriter(
-                new TFile("archive.zip/dir/HälloWörld.txt"));
-        try {
-            writer.write("Hello world!\n");
-        } finally {
-            writer.close();
+        final Options options = new Options(args);
+        final int threshold = options.getInt("waste", 50);
+        if (0 > threshold || 100 < threshold)
+            throw new IllegalArgumentException(threshold + " (waste threshold must be between 0 and 100 percent)");
+        final TFile archive = new TFile("archive.zip");
+        final File file = archive.getFile();
+        final BasicFileAttributes before = attributes(file);
+
+        try (TConfig config = TConfig.open()) {
+            // The GROW option is supported by the drivers for the ZIP file
+            // format family, e.g. for ZIP and JAR files.
+            // Any other driver ignores it.
+            if (options.has("grow"))
+                config.setAccessPreference(FsAccessOption.GROW, true);
+
+            // By default, ZIP files use character set IBM437 to encode entry
+            // names whereas JAR files use UTF-8.
+            // This can be changed by configuring the respective archive
+            // driver, see Javadoc for TApplication.setup().
+            final Writer writer = new TFileWriter(
+                    new TFile(archive, "dir/HälloWörld.txt"));
+            try {
+                writer.write("Hello world!\n");
+            } finally {
+                writer.close();
+            }
+
+            // Commit the update while the GROW option is in effect.
+            TVFS.umount();
+        }
+        final long waste = report("updated", file, before);
+
+        if (options.has("compact")
+                || threshold < waste * 100 / Math.max(1, file.length())) {
+            final BasicFileAttributes uncompacted = attributes(file);
+            archive.compact();
+            TVFS.umount();
+            report("compacted", file, uncompacted);
         }
         return 0;
     }
+
+    /**
+     * Returns the attributes of the given file or {@code null} if it doesn't
+     * exist.
+     */
+    private static BasicFileAttributes attributes(final File file) {
+        try {
+            return Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Prints the bytes written to the given ZIP file since its attributes
+     * were the given ones and returns its waste.
+     * If the ZIP file is still the same file and hasn't shrunk, then it's
+     * been appended to, otherwise it's been rewritten.
+     */
+    private static long report(
+            final String update,
+            final File file,
+            final BasicFileAttributes before) throws IOException {
+        final BasicFileAttributes after = attributes(file);
+        if (null == after) throw new IOException(file + " (file does not exist)");
+        final boolean appended = null != before
+                && null != before.fileKey()
+                && before.fileKey().equals(after.fileKey())
+                && before.size() <= after.size();
+        final long written = appended
+                ? after.size() - before.size()
+                : after.size();
+        final long waste;
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            waste = ZipDirectory.read(channel).waste(channel);
+        }
+        System.err.printf("%s %s: %s %d bytes, size %d bytes, waste %d bytes (%d%%)%n",
+                file, update, appended ? "appended" : "rewrote",
+                written, after.size(), waste,
+                waste * 100 / Math.max(1, after.size()));
+        return waste;
+    }
 }
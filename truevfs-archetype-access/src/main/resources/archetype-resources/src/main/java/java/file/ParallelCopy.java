@@ -0,0 +1,226 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.file;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+import net.java.truevfs.access.TFileOutputStream;
+
+/**
+ * Recursively copies a file or directory tree like {@link TFile${symbol_pound}cp_rp},
+ * but copies the files on a pool of worker threads.
+ * <p>
+ * The calling thread walks the source tree, creates the target directories
+ * and submits a job for each file to a bounded work queue.
+ * If the queue is full, the calling thread copies the file itself, so it
+ * cannot run ahead of the workers.
+ * Each worker reads and decompresses its source file on its own.
+ * <p>
+ * However, the entries of the same target archive file don't get
+ * compressed in parallel:
+ * The TrueVFS Kernel writes an archive file sequentially, so it buffers any
+ * concurrent entry output streams to the same archive file in temporary
+ * files and then copies and compresses them one after another.
+ * The public API offers no way to write an entry which has been compressed
+ * in advance, like {@link ${package}.java.util.ParallelZipWriter} does.
+ * So writing to the same target archive file gets serialized by a lock per
+ * archive file anyway, which saves the temporary files.
+ * Only reading, decompressing and writing to different target archive files
+ * or to plain files runs in parallel.
+ * In order to keep the lock short, files up to the staging size get read
+ * into a heap buffer before the lock gets acquired.
+ * Larger files get streamed while holding the lock.
+ * So the heap usage is bounded by the number of threads times the staging
+ * size.
+ * <p>
+ * Like {@code cp_rp}, this class preserves the last modification time of
+ * all copied files and directories and copies nested archive files
+ * recursively.
+ */
+public final class ParallelCopy {
+
+    private final int threads;
+    private final int queueSize;
+    private final int stagingSize;
+
+    /**
+     * Constructs a new parallel copy.
+     *
+     * @param threads the number of worker threads.
+     * @param queueSize the maximum number of pending jobs.
+     * @param stagingSize the maximum size of a file which gets read into a
+     *        heap buffer before writing it.
+     */
+    public ParallelCopy(
+            final int threads,
+            final int queueSize,
+            final int stagingSize) {
+        if (0 >= threads)
+            throw new IllegalArgumentException(threads + " (number of threads must be positive)");
+        if (0 >= queueSize)
+            throw new IllegalArgumentException(queueSize + " (queue size must be positive)");
+        if (0 > stagingSize)
+            throw new IllegalArgumentException(stagingSize + " (staging size must not be negative)");
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.stagingSize = stagingSize;
+    }
+
+    /**
+     * Recursively copies the source file or directory to the destination
+     * file or directory, preserving all last modification times.
+     *
+     * @throws IOException if any file or directory cannot get copied.
+     *         Copying continues for all other files and the first exception
+     *         gets thrown with all others suppressed.
+     */
+    public void cp_rp(final TFile src, final TFile dst) throws IOException {
+        if (!src.exists())
+            throw new IOException(src + " (file or directory does not exist)");
+        final String srcPath = src.getCanonicalPath();
+        final String dstPath = dst.getCanonicalPath();
+        if (srcPath.equals(dstPath))
+            throw new IOException(src + " (source and destination are the same file)");
+        if (dstPath.startsWith(srcPath + File.separator))
+            throw new IOException(dst + " (destination is contained in source)");
+        final Run run = new Run();
+        try {
+            run.walk(src, dst);
+        } catch (IOException ex) {
+            run.fail(ex);
+        } finally {
+            run.finish();
+        }
+    }
+
+    /** The state of a single run of {@link ${symbol_pound}cp_rp}. */
+    private final class Run {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        final ConcurrentMap<File, Lock> locks = new ConcurrentHashMap<>();
+        final List<TFile[]> directories = new ArrayList<>();
+        IOException failure;
+
+        void walk(final TFile src, final TFile dst) throws IOException {
+            if (src.isDirectory()) {
+                if (!dst.isDirectory() && !dst.mkdirs())
+                    throw new IOException(dst + " (cannot create directory)");
+                final TFile[] members = src.listFiles();
+                if (null == members)
+                    throw new IOException(src + " (cannot list directory)");
+                for (final TFile member : members)
+                    walk(member, new TFile(dst, member.getName()));
+                directories.add(new TFile[] { src, dst });
+            } else {
+                executor.execute(new Job(src, dst));
+            }
+        }
+
+        void finish() throws IOException {
+            executor.shutdown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (executor.awaitTermination(1, TimeUnit.SECONDS)) break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            // Writing the members updates the last modification time of a
+            // directory, so it has to get restored afterwards.
+            for (int i = directories.size(); 0 <= --i; ) {
+                final TFile[] pair = directories.get(i);
+                if (!pair[1].setLastModified(pair[0].lastModified()))
+                    fail(new IOException(pair[1] + " (cannot preserve last modification time)"));
+            }
+            synchronized (this) {
+                if (null != failure) throw failure;
+            }
+        }
+
+        synchronized void fail(final IOException ex) {
+            if (null == failure) failure = ex;
+            else failure.addSuppressed(ex);
+        }
+
+        Lock lock(final TFile file) {
+            final TFile archive = file.getInnerArchive();
+            if (null == archive) return null;
+            Lock lock = locks.get(archive);
+            if (null == lock) {
+                final Lock newLock = new ReentrantLock();
+                lock = locks.putIfAbsent(archive, newLock);
+                if (null == lock) lock = newLock;
+            }
+            return lock;
+        }
+
+        /** Copies a single file. */
+        final class Job implements Runnable {
+            final TFile src, dst;
+
+            Job(final TFile src, final TFile dst) {
+                this.src = src;
+                this.dst = dst;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    copy();
+                } catch (IOException ex) {
+                    fail(ex);
+                } catch (RuntimeException ex) {
+                    // Don't let the copy succeed anyway.
+                    fail(new IOException(src + " (cannot copy file)", ex));
+                }
+            }
+
+            void copy() throws IOException {
+                final long length = src.length();
+                byte[] staged = null;
+                if (length <= stagingSize) {
+                    final ByteArrayOutputStream buf
+                            = new ByteArrayOutputStream((int) length);
+                    try (InputStream in = new TFileInputStream(src)) {
+                        TFile.cat(in, buf);
+                    }
+                    staged = buf.toByteArray();
+                }
+                final Lock lock = lock(dst);
+                if (null != lock) lock.lock();
+                try {
+                    if (null != staged) {
+                        try (OutputStream out = new TFileOutputStream(dst)) {
+                            out.write(staged);
+                        }
+                    } else {
+                        TFile.cp(src, dst);
+                    }
+                    if (!dst.setLastModified(src.lastModified()))
+                        throw new IOException(dst + " (cannot preserve last modification time)");
+                } finally {
+                    if (null != lock) lock.unlock();
+                }
+            }
+        }
+    }
+}
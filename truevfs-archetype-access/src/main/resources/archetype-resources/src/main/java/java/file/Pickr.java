@@ -4,6 +4,16 @@
 package ${package}.java.file;
 
 import ${package}.java.Application;
+import ${package}.java.util.BackgroundFileSystemView;
+import ${package}.java.util.EdtMonitor;
+import ${package}.java.util.ListingCache;
+import ${package}.java.util.Options;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.swing.JFileChooser;
 import javax.swing.SwingUtilities;
 import net.java.truevfs.access.swing.TFileChooser;
 
@@ -15,6 +25,24 @@ import net.java.truevfs.access.swing.TFileChooser;
  * For example, if the JAR for the module {@code truevfs-driver-zip} is present
  * on the run time class path and a ZIP file {@code archive.zip} exists, then
  * you can double click it to browse its entries.
+ * <p>
+ * Opening a large archive file mounts and lists it on the event dispatch
+ * thread (EDT), so the dialog freezes until it's done.
+ * With the option {@code --background}, the file chooser uses a
+ * {@link BackgroundFileSystemView} instead, which mounts and lists archive
+ * files on worker threads and fills the view in chunks as the entries
+ * arrive.
+ * Selecting an archive file starts loading it before it gets opened.
+ * The option {@code --threads=<n>} sets the number of worker threads and
+ * defaults to two.
+ * The listings of recently browsed archive files get cached in a
+ * {@link ListingCache}.
+ * The option {@code --cache=<n>} sets its budget as the total number of
+ * entries and defaults to 100000.
+ * <p>
+ * With the option {@code --stall}, the worst-case stall of the EDT gets
+ * measured by an {@link EdtMonitor} and printed to the standard error output
+ * when the dialog is closed, so you can compare the modes.
  *
  * @author  Christian Schlichtherle
  */
@@ -27,15 +55,66 @@ public class Pickr extends Application<Exception> {
 
     @Override
     protected int work(final String[] args) throws Exception {
-        SwingUtilities.invokeAndWait(new Runnable() {
+        final Options options = new Options(args);
+        final boolean background = options.has("background");
+        final int threads = options.getInt("threads", 2);
+        if (0 >= threads)
+            throw new IllegalArgumentException(threads + " (number of threads must be positive)");
+        final ListingCache cache
+                = new ListingCache(options.getLong("cache", 100000));
+        final ExecutorService executor = background
+                ? Executors.newFixedThreadPool(threads)
+                : null;
+        final EdtMonitor monitor = options.has("stall")
+                ? new EdtMonitor()
+                : null;
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                @Override
+                public void run() {
+                    final JFileChooser pickr = background
+                            ? background(cache, executor)
+                            : new TFileChooser();
+                    if (JFileChooser.APPROVE_OPTION == pickr.showDialog(
+                            null, "Pick this!"))
+                        System.out.println(pickr.getSelectedFile());
+                }
+            });
+        } finally {
+            if (null != executor) executor.shutdownNow();
+            if (null != monitor) {
+                monitor.close();
+                System.err.println(monitor);
+            }
+        }
+        if (background) System.err.println(cache);
+        return 0;
+    }
+
+    /**
+     * Returns a file chooser with the file system view and the file view of
+     * a {@link TFileChooser}, where the file system view is decorated with a
+     * {@link BackgroundFileSystemView}.
+     */
+    private static JFileChooser background(
+            final ListingCache cache,
+            final ExecutorService executor) {
+        final TFileChooser template = new TFileChooser();
+        final JFileChooser pickr = new JFileChooser();
+        final BackgroundFileSystemView view = new BackgroundFileSystemView(
+                template.getFileSystemView(), pickr, cache, executor);
+        pickr.setFileSystemView(view);
+        pickr.setFileView(template.getFileView());
+        pickr.setCurrentDirectory(template.getCurrentDirectory());
+        pickr.addPropertyChangeListener(
+                JFileChooser.SELECTED_FILE_CHANGED_PROPERTY,
+                new PropertyChangeListener() {
             @Override
-            public void run() {
-                final TFileChooser pickr = new TFileChooser();
-                if (TFileChooser.APPROVE_OPTION == pickr.showDialog(
-                        null, "Pick this!"))
-                    System.out.println(pickr.getSelectedFile());
+            public void propertyChange(final PropertyChangeEvent evt) {
+                final Object file = evt.getNewValue();
+                if (file instanceof File) view.load((File) file);
             }
         });
-        return 0;
+        return pickr;
     }
 }
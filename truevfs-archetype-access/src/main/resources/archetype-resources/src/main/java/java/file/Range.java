@@ -0,0 +1,91 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.file;
+
+import ${package}.java.Application;
+import ${package}.java.util.Options;
+import ${package}.java.util.RangeReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import net.java.truevfs.access.TFile;
+
+/**
+ * This command line utility prints a byte range of the files named by the
+ * remaining arguments on the standard output, where the first argument is
+ * the offset of the range and the second argument is the maximum number of
+ * bytes.
+ * <p>
+ * Unlike {@link Cat}, this doesn't read an archive entry from its start if
+ * possible, see {@link RangeReader}:
+ * A range of a STORED entry in a ZIP file gets read directly from the ZIP
+ * file, so the latency doesn't depend on the offset.
+ * A DEFLATED entry gets inflated and discarded up to the offset, so it never
+ * gets buffered as a whole.
+ * <p>
+ * With the option {@code --stats}, the access strategy, the number of copied
+ * and discarded bytes and the latency get printed to the standard error
+ * output for each file.
+ *
+ * @see    Head
+ * @see    Tail
+ */
+public class Range extends Application<IOException> {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public static void main(String[] args) throws IOException {
+        System.exit(new Range().run(args));
+    }
+
+    @Override
+    protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        args = options.operands();
+        if (3 > args.length)
+            throw new IllegalArgumentException("Usage: [--stats] <offset> <count> <path>...");
+        final long offset = Long.parseLong(args[0]);
+        final long count = Long.parseLong(args[1]);
+        if (0 > offset)
+            throw new IllegalArgumentException(offset + " (offset must not be negative)");
+        copy(Arrays.copyOfRange(args, 2, args.length), offset, count, false,
+                options.has("stats"));
+        return 0;
+    }
+
+    /**
+     * Copies a byte range of each of the given files to the standard
+     * output.
+     *
+     * @param offset the offset of the range, which counts backwards from the
+     *        end of each file if {@code tail} is {@code true}.
+     * @param count the maximum number of bytes to copy.
+     */
+    protected final void copy(
+            final String[] paths,
+            final long offset,
+            final long count,
+            final boolean tail,
+            final boolean stats)
+    throws IOException {
+        if (0 > count)
+            throw new IllegalArgumentException(count + " (count must not be negative)");
+        final RangeReader reader = new RangeReader(BUFFER_SIZE);
+        final PrintStream out = System.out;
+        for (final String path : paths) {
+            final long start = System.nanoTime();
+            try (RangeReader.Input input = reader.open(new TFile(path))) {
+                final long copied = input.copy(
+                        tail ? Math.max(0, input.size() - offset) : offset,
+                        count, out);
+                out.flush();
+                if (stats)
+                    System.err.printf("%s: %s, %d of %d bytes copied, %d bytes discarded, %.3f ms%n",
+                            path, input.access(), copied, input.size(),
+                            input.discarded(),
+                            (System.nanoTime() - start) / 1e6);
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.file;
+
+import ${package}.java.Application;
+import ${package}.java.util.Options;
+import ${package}.java.util.ZipSync;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * This command line utility incrementally updates the ZIP file named by the
+ * second argument so that its entries equal the files in the directory named
+ * by the first argument.
+ * <p>
+ * Unlike {@link Copy}, this only compresses files which have been added or
+ * modified since the last update and appends them to the ZIP file.
+ * Unchanged entries stay where they are and deleted entries get dropped from
+ * the central directory, see {@link ZipSync}.
+ * If nothing has changed, then the ZIP file doesn't get written at all.
+ * Both arguments are plain path names, so the ZIP file must not be part of
+ * another archive file and it must not be in use by another application.
+ * <p>
+ * The option {@code --threads=<n>} sets the number of worker threads and
+ * defaults to the number of available processors.
+ * The option {@code --level=<n>} sets the compression level and defaults to
+ * the default level of the {@link Deflater}.
+ * The option {@code --waste=<percent>} sets the share of the waste in the
+ * size of the ZIP file above which it gets compacted and defaults to 50.
+ * At the end, the number of added, modified, deleted and unchanged entries
+ * and the number of bytes which didn't need to get recompressed get printed.
+ */
+public class Sync extends Application<IOException> {
+
+    public static void main(String[] args) throws IOException {
+        System.exit(new Sync().run(args));
+    }
+
+    @Override
+    protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        args = options.operands();
+        if (2 != args.length)
+            throw new IllegalArgumentException("Usage: [--threads=<n>] [--level=<n>] [--waste=<percent>] <directory> <zip file>");
+        final ZipSync sync = new ZipSync(
+                options.getInt("threads", Runtime.getRuntime().availableProcessors()),
+                options.getInt("level", Deflater.DEFAULT_COMPRESSION),
+                options.getInt("waste", 50));
+        final long start = System.nanoTime();
+        final boolean written = sync.sync(new File(args[0]), new File(args[1]));
+        final long nanos = System.nanoTime() - start;
+        System.out.printf("%d added, %d modified, %d deleted, %d unchanged%n",
+                sync.added(), sync.modified(), sync.deleted(), sync.unchanged());
+        if (written)
+            System.out.printf("%d ms, %d bytes written, %d bytes copied, %d bytes not recompressed%s%n",
+                    nanos / 1000000, sync.writtenBytes(), sync.copiedBytes(),
+                    sync.savedBytes(), sync.compacted() ? ", compacted" : "");
+        else
+            System.out.printf("%d ms, up to date%n", nanos / 1000000);
+        return 0;
+    }
+}
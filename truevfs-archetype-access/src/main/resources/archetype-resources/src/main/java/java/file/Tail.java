@@ -0,0 +1,38 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.file;
+
+import ${package}.java.util.Options;
+import java.io.IOException;
+
+/**
+ * This command line utility prints the last bytes of the files named by the
+ * arguments on the standard output.
+ * <p>
+ * For a plain file or a STORED entry in a ZIP file, only the requested bytes
+ * get read, so the latency is constant for any size of the file.
+ * A DEFLATED entry must get inflated up to the offset, so the latency grows
+ * with its size, but it never gets buffered as a whole, see {@link Range}.
+ * The option {@code --bytes=<n>} sets the number of bytes and defaults to
+ * 4096.
+ * With the option {@code --stats}, the latency gets printed to the standard
+ * error output.
+ */
+public class Tail extends Range {
+
+    public static void main(String[] args) throws IOException {
+        System.exit(new Tail().run(args));
+    }
+
+    @Override
+    protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        args = options.operands();
+        if (0 >= args.length)
+            throw new IllegalArgumentException("Usage: [--bytes=<n>] [--stats] <path>...");
+        final long bytes = options.getLong("bytes", 4096);
+        copy(args, bytes, bytes, true, options.has("stats"));
+        return 0;
+    }
+}
@@ -4,11 +4,21 @@
 package ${package}.java.file;
 
 import ${package}.java.Application;
+import ${package}.java.util.DiskUsage;
+import ${package}.java.util.FileTreeModel;
+import ${package}.java.util.ForkJoinGraph;
+import ${package}.java.util.IndexedTreeModel;
+import ${package}.java.util.ListingIndex;
+import ${package}.java.util.Options;
+import ${package}.java.util.Stopwatch;
+import ${package}.java.util.TreeGraph;
+import ${package}.java.util.TreeModel;
+import ${package}.java.util.TreePrinter;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.io.PrintStream;
+import java.util.List;
 import net.java.truevfs.access.TFile;
-import net.java.truevfs.kernel.spec.FsSyncException;
 
 /**
  * This command line utility prints the tree graph of the directory structure
@@ -20,15 +30,51 @@ import net.java.truevfs.kernel.spec.FsSyncException;
  * on the run time class path and the path name argument is {@code archive.zip}
  * and this file actually exists as a ZIP file, then the tree graph of the
  * directory structure of this ZIP file gets printed.
+ * <p>
+ * With the option {@code --parallel[=<n>]}, sibling directories and archive
+ * files get listed and mounted concurrently by up to {@code <n>} threads,
+ * which defaults to the number of available processors.
+ * The output is the same as without this option.
+ * <p>
+ * With the option {@code --unsorted}, the members of each directory get
+ * printed in the order which the directory stream yields them.
+ * This saves collecting and sorting them, which matters for directories or
+ * archive files with a huge number of entries.
+ * <p>
+ * With the option {@code --index[=<file>]}, the directory trees of top level
+ * archive files get read from a persistent {@link ListingIndex} in the given
+ * file, which defaults to {@code .tree-index} in the user's home directory.
+ * The archive files only get mounted if the index has no listing for them or
+ * if they have changed since, and then the index gets updated.
+ * So printing the tree graph of an unchanged set of archive files costs
+ * about as much as reading the index.
+ * <p>
+ * With the option {@code --du}, the disk usage of the directory trees gets
+ * printed instead, like {@code du} does, see {@link DiskUsage}:
+ * For each directory and archive file, a line with the number of entries,
+ * the uncompressed size and the compressed size in bytes and the path name
+ * gets printed, with the members before their directory.
+ * The sizes get read from the central directory of ZIP files, so this is
+ * fast even for millions of entries.
+ * The directory trees get processed by up to {@code <n>} threads as given by
+ * the option {@code --parallel[=<n>]}, which defaults to the number of
+ * available processors in this mode.
+ * The option {@code --depth=<n>} limits the lines to the subtrees up to the
+ * given depth below the arguments.
+ * The option {@code --top[=<n>]} prints the given number of largest
+ * subtrees at any depth at the end, which defaults to ten.
+ * The options {@code --unsorted} and {@code --index} don't apply.
+ * <p>
+ * With the option {@code --stats}, the number of printed lines, the elapsed
+ * wall time and the heap allocations of the main thread get printed to the
+ * standard error output.
  *
  * @author  Christian Schlichtherle
  */
 public class Tree extends Application<IOException> {
 
-    private static final String DEFAULT_PREFIX  = "|-- ";
-    private static final String LAST_PREFIX     = "`-- ";
-    private static final String DEFAULT_PADDING = "|   ";
-    private static final String LAST_PADDING    = "    ";
+    private static final String INDEX = new File(
+            System.getProperty("user.home"), ".tree-index").getPath();
 
     public static void main(String[] args) throws IOException {
         System.exit(new Tree().run(args));
@@ -36,35 +82,86 @@ public class Tree extends Application<IOException> {
 
     @Override
     protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        if (options.has("du")) return du(options);
+        final int parallelism = options.has("parallel")
+                ? options.getInt("parallel", Runtime.getRuntime().availableProcessors())
+                : 0;
+        final boolean sorted = !options.has("unsorted");
+        args = options.operands();
         if (0 >= args.length) args = new String[] { "." };
-        for (String arg : args) graph(new TFile(arg), "", "");
+        final ListingIndex index = options.has("index")
+                ? ListingIndex.open(new File(options.get("index", INDEX)))
+                : null;
+        final Stopwatch stopwatch = new Stopwatch();
+        final TreePrinter printer = new TreePrinter(System.out);
+        try {
+            for (String arg : args) {
+                if (null != index) {
+                    final IndexedTreeModel model = new IndexedTreeModel(index);
+                    graph(model, model.node(new TFile(arg)),
+                            parallelism, sorted, printer);
+                } else {
+                    graph(new FileTreeModel(), new TFile(arg),
+                            parallelism, sorted, printer);
+                }
+            }
+        } finally {
+            printer.flush();
+        }
+        if (null != index) index.save();
+        if (options.has("stats"))
+            System.err.println(printer.lines() + " lines, " + stopwatch);
         return 0;
     }
 
-    private void graph(
-            final File file,
-            final String padding,
-            final String prefix)
-    throws IOException {
-        if (!file.exists())
-            throw new IllegalArgumentException(file + " (file or directory does not exist)");
-        System.out.append(padding).append(prefix).println(file.getName());
-        if (file.isDirectory()) {
-            final File[] entries = file.listFiles();
-            if (null == entries)
-                throw new IOException(file + " (cannot list directory");
-            Arrays.sort(entries);
-            final int l = entries.length - 1;
-            if (0 <= l) {
-                String nextPadding = padding;
-                if (0 < prefix.length())
-                    nextPadding += LAST_PREFIX.equals(prefix)
-                            ? LAST_PADDING
-                            : DEFAULT_PADDING;
-                int i = 0;
-                while (i < l) graph(entries[i++], nextPadding, DEFAULT_PREFIX);
-                graph(entries[i], nextPadding, LAST_PREFIX);
-            }
+    private static int du(final Options options) throws IOException {
+        final DiskUsage usage = new DiskUsage(
+                options.getInt("parallel", Runtime.getRuntime().availableProcessors()),
+                options.getInt("depth", Integer.MAX_VALUE),
+                options.has("top") ? options.getInt("top", 10) : 0);
+        String[] args = options.operands();
+        if (0 >= args.length) args = new String[] { "." };
+        final Stopwatch stopwatch = new Stopwatch();
+        final PrintStream out = System.out;
+        long lines = 0;
+        for (String arg : args) {
+            final DiskUsage.Usage root = usage.measure(new TFile(arg));
+            for (final DiskUsage.Usage subtree : root.subtrees())
+                print(subtree, out);
+            print(root, out);
+            lines += root.subtrees().size() + 1;
+        }
+        final List<DiskUsage.Usage> largest = usage.largest();
+        if (!largest.isEmpty()) {
+            out.println();
+            out.println("Largest subtrees:");
+            for (final DiskUsage.Usage subtree : largest) print(subtree, out);
+            lines += largest.size() + 2;
         }
+        out.flush();
+        if (options.has("stats"))
+            System.err.println(lines + " lines, " + stopwatch);
+        return 0;
+    }
+
+    private static void print(
+            final DiskUsage.Usage usage,
+            final PrintStream out) {
+        out.printf("%10d %15d %15d  %s%n", usage.entries(), usage.size(),
+                usage.compressed(), usage.path());
+    }
+
+    private static <N> void graph(
+            final TreeModel<N> model,
+            final N root,
+            final int parallelism,
+            final boolean sorted,
+            final TreePrinter printer)
+    throws IOException {
+        if (0 < parallelism)
+            new ForkJoinGraph<>(model, parallelism, sorted).graph(root, printer);
+        else
+            new TreeGraph<>(model, sorted).graph(root, printer);
     }
 }
@@ -0,0 +1,404 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.file;
+
+import ${package}.java.Application;
+import ${package}.java.util.Options;
+import ${package}.java.util.ZipDirectory;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This command line utility verifies the integrity of the entries of the ZIP
+ * files named by its arguments or found in the directory trees of its
+ * arguments.
+ * <p>
+ * The entries get read and inflated in parallel by a bounded pool of worker
+ * threads, so this scales with the number of processors.
+ * The size and the CRC-32 of each entry get compared with its central
+ * directory record.
+ * Corrupt entries get printed to the standard output without aborting the
+ * run.
+ * At most {@code --open=<n>} ZIP files, which defaults to the number of
+ * threads, are open at the same time.
+ * The archive files get read as plain files, so nested archive files get
+ * verified like any other entry, but not recursively.
+ * Encrypted entries and entries with a compression method other than
+ * {@code STORED} or {@code DEFLATED} get skipped.
+ * Other files in the directory trees which are not ZIP files get ignored.
+ * <p>
+ * With the option {@code --sha256}, the SHA-256 hash of each entry gets
+ * computed, too.
+ * With the option {@code --write-manifest=<file>}, the hashes get written to
+ * the given file in the format of the {@code sha256sum} utility with the
+ * path names {@code archive.zip/dir/entry}.
+ * With the option {@code --manifest=<file>}, the hashes get compared with
+ * the given file instead and any mismatching or missing entries get printed.
+ * Both options imply {@code --sha256}.
+ * <p>
+ * The option {@code --threads=<n>} sets the number of worker threads and
+ * defaults to the number of available processors.
+ * At the end, the number of archive files and entries, the number of
+ * corrupt and skipped entries, the number of all problems and the throughput
+ * of the uncompressed and the compressed data get printed to the standard
+ * error output.
+ * The exit status is zero if and only if no problem has been found.
+ */
+public class Verify extends Application<IOException> {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final AtomicLong archives = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+    private final AtomicLong corrupt = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong problems = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong compressed = new AtomicLong();
+    private final ConcurrentMap<String, String> hashes = new ConcurrentHashMap<>();
+    private final Set<String> seen = Collections.newSetFromMap(
+            new ConcurrentHashMap<String, Boolean>());
+    private final Queue<Worker> allWorkers = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            final Worker worker = new Worker(sha256);
+            allWorkers.add(worker);
+            return worker;
+        }
+    };
+    private volatile boolean sha256;
+    private Map<String, String> manifest;
+    private Semaphore open;
+    private ThreadPoolExecutor executor;
+
+    public static void main(String[] args) throws IOException {
+        System.exit(new Verify().run(args));
+    }
+
+    @Override
+    protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        final int threads = options.getInt("threads",
+                Runtime.getRuntime().availableProcessors());
+        final int maxOpen = options.getInt("open", threads);
+        if (0 >= threads)
+            throw new IllegalArgumentException(threads + " (number of threads must be positive)");
+        if (0 >= maxOpen)
+            throw new IllegalArgumentException(maxOpen + " (number of open archive files must be positive)");
+        final String write = options.get("write-manifest", null);
+        final String read = options.get("manifest", null);
+        if (null != read) manifest = readManifest(new File(read));
+        sha256 = options.has("sha256") || null != write || null != read;
+        args = options.operands();
+        if (0 >= args.length)
+            throw new IllegalArgumentException("Usage: [--threads=<n>] [--open=<n>] [--sha256] [--manifest=<file>|--write-manifest=<file>] <path>...");
+
+        final long start = System.nanoTime();
+        open = new Semaphore(maxOpen);
+        executor = new ThreadPoolExecutor(threads, threads,
+                0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(4 * threads),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            for (final String arg : args) walk(new File(arg), true);
+        } finally {
+            executor.shutdown();
+            try {
+                while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                }
+                // Release the native memory of the inflaters.
+                workers.remove();
+                for (Worker worker; null != (worker = allWorkers.poll()); )
+                    worker.inflater.end();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        final long nanos = System.nanoTime() - start;
+
+        if (null != manifest)
+            for (final String path : new TreeMap<>(manifest).keySet())
+                if (!seen.contains(path))
+                    problem(path, "missing");
+        if (null != write) writeManifest(new File(write));
+        System.err.printf("%d archives, %d entries, %d corrupt, %d skipped, %d problems, %.1f MB in %d ms, %.1f MB/s (%.1f MB/s compressed)%n",
+                archives.get(), entries.get(), corrupt.get(), skipped.get(),
+                problems.get(),
+                bytes.get() / 1e6, nanos / 1000000,
+                bytes.get() * 1e3 / nanos, compressed.get() * 1e3 / nanos);
+        return 0 == problems.get() ? 0 : 1;
+    }
+
+    private void walk(final File file, final boolean explicit) {
+        if (file.isDirectory()) {
+            final File[] members = file.listFiles();
+            if (null == members) {
+                problem(file.getPath(), "cannot list directory");
+                return;
+            }
+            Arrays.sort(members);
+            for (final File member : members) walk(member, false);
+        } else if (file.isFile()) {
+            verify(file, explicit);
+        } else {
+            problem(file.getPath(), "no such file or directory");
+        }
+    }
+
+    /**
+     * Opens the given archive file and submits a job for each entry.
+     * The archive file gets closed by the job which finishes last.
+     */
+    private void verify(final File file, final boolean explicit) {
+        open.acquireUninterruptibly();
+        final Archive archive;
+        try {
+            final FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ);
+            try {
+                archive = new Archive(file, channel, ZipDirectory.read(channel));
+            } catch (IOException | RuntimeException ex) {
+                channel.close();
+                throw ex;
+            }
+        } catch (IOException ex) {
+            open.release();
+            if (explicit) problem(file.getPath(), ex.toString());
+            return;
+        }
+        archives.incrementAndGet();
+        if (archive.directory.entries().isEmpty()) {
+            archive.done();
+            return;
+        }
+        for (final ZipDirectory.Entry entry : archive.directory.entries()) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        verify(archive, entry);
+                    } finally {
+                        archive.done();
+                    }
+                }
+            });
+        }
+    }
+
+    /** Verifies the given entry on the current thread. */
+    private void verify(final Archive archive, final ZipDirectory.Entry entry) {
+        final String path = archive.file.getPath() + "/" + entry.name();
+        if (null != manifest) seen.add(path);
+        if (entry.isEncrypted()
+                || ZipDirectory.STORED != entry.method()
+                    && ZipDirectory.DEFLATED != entry.method()) {
+            skipped.incrementAndGet();
+            return;
+        }
+        entries.incrementAndGet();
+        final String problem;
+        try {
+            problem = workers.get().verify(archive.channel, entry);
+        } catch (IOException ex) {
+            corrupt.incrementAndGet();
+            problem(path, ex.toString());
+            return;
+        }
+        bytes.addAndGet(entry.size());
+        compressed.addAndGet(entry.compressedSize());
+        if (null != problem) {
+            corrupt.incrementAndGet();
+            problem(path, problem);
+            return;
+        }
+        if (!sha256 || entry.isDirectory()) return;
+        final String hash = workers.get().hash();
+        hashes.put(path, hash);
+        if (null != manifest) {
+            final String expected = manifest.get(path);
+            if (null == expected) {
+                problem(path, "not in manifest");
+            } else if (!expected.equalsIgnoreCase(hash)) {
+                corrupt.incrementAndGet();
+                problem(path, "SHA-256 " + hash + ", expected " + expected);
+            }
+        }
+    }
+
+    private void problem(final String path, final String message) {
+        problems.incrementAndGet();
+        synchronized (System.out) {
+            System.out.println(path + ": " + message);
+        }
+    }
+
+    private static Map<String, String> readManifest(final File file)
+    throws IOException {
+        final Map<String, String> manifest = new ConcurrentHashMap<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            for (String line; null != (line = in.readLine()); ) {
+                if (line.isEmpty()) continue;
+                final int sep = line.indexOf("  ");
+                if (0 >= sep)
+                    throw new IOException(file + " (invalid manifest line: " + line + ")");
+                manifest.put(line.substring(sep + 2), line.substring(0, sep));
+            }
+        }
+        return manifest;
+    }
+
+    private void writeManifest(final File file) throws IOException {
+        try (Writer out = new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            for (final Map.Entry<String, String> entry
+                    : new TreeMap<>(hashes).entrySet())
+                out.write(entry.getValue() + "  " + entry.getKey() + "\n");
+        }
+    }
+
+    private final class Archive {
+        final File file;
+        final FileChannel channel;
+        final ZipDirectory directory;
+        final AtomicInteger remaining;
+
+        Archive(final File file,
+                final FileChannel channel,
+                final ZipDirectory directory) {
+            this.file = file;
+            this.channel = channel;
+            this.directory = directory;
+            this.remaining = new AtomicInteger(directory.entries().size());
+        }
+
+        /** Closes this archive file after the last entry. */
+        void done() {
+            if (0 < remaining.get() && 0 < remaining.decrementAndGet())
+                return;
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                problem(file.getPath(), ex.toString());
+            } finally {
+                open.release();
+            }
+        }
+    }
+
+    /** The reusable state of a worker thread. */
+    private static final class Worker {
+        final ByteBuffer input = ByteBuffer.allocate(BLOCK_SIZE);
+        final byte[] output = new byte[BLOCK_SIZE];
+        final Inflater inflater = new Inflater(true);
+        final CRC32 crc = new CRC32();
+        final MessageDigest digest;
+
+        Worker(final boolean sha256) {
+            try {
+                digest = sha256 ? MessageDigest.getInstance("SHA-256") : null;
+            } catch (NoSuchAlgorithmException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+
+        /**
+         * Reads the given entry and returns a description of the problem
+         * or {@code null} if the entry is intact.
+         */
+        String verify(final FileChannel channel, final ZipDirectory.Entry entry)
+        throws IOException {
+            final boolean deflated = ZipDirectory.DEFLATED == entry.method();
+            crc.reset();
+            inflater.reset();
+            if (null != digest) digest.reset();
+            long position = entry.dataOffset(channel);
+            long remaining = entry.compressedSize();
+            long size = 0;
+            try {
+                while (0 < remaining) {
+                    input.clear();
+                    input.limit((int) Math.min(input.capacity(), remaining));
+                    final int n = channel.read(input, position);
+                    if (0 > n) return "truncated";
+                    position += n;
+                    remaining -= n;
+                    if (deflated) {
+                        inflater.setInput(input.array(), 0, n);
+                        size += inflate();
+                    } else {
+                        update(input.array(), n);
+                        size += n;
+                    }
+                }
+                if (deflated) {
+                    // Flush any output which is still buffered.
+                    size += inflate();
+                    if (!inflater.finished()) return "truncated deflate data";
+                }
+            } catch (DataFormatException ex) {
+                return "invalid deflate data: " + ex.getMessage();
+            }
+            if (size != entry.size())
+                return "size " + size + ", expected " + entry.size();
+            if (crc.getValue() != entry.crc())
+                return String.format("CRC-32 %08x, expected %08x",
+                        crc.getValue(), entry.crc());
+            return null;
+        }
+
+        private long inflate() throws DataFormatException {
+            long size = 0;
+            for (int n; 0 < (n = inflater.inflate(output)); ) {
+                update(output, n);
+                size += n;
+            }
+            return size;
+        }
+
+        private void update(final byte[] buf, final int n) {
+            crc.update(buf, 0, n);
+            if (null != digest) digest.update(buf, 0, n);
+        }
+
+        String hash() {
+            final StringBuilder hex = new StringBuilder(64);
+            for (final byte b : digest.digest())
+                hex.append(Character.forDigit(b >> 4 & 0xf, 16))
+                   .append(Character.forDigit(b & 0xf, 16));
+            return hex.toString();
+        }
+    }
+}
@@ -4,16 +4,27 @@
 package ${package}.java.path;
 
 import ${package}.java.Application;
+import ${package}.java.util.Options;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import net.java.truevfs.access.TFile;
 import net.java.truevfs.access.TPath;
 
 /**
  * This command line utility concatenates the contents of the parameter paths
  * on the standard output.
+ * <p>
+ * With the option {@code --lookahead=<n>}, the files get concatenated by a
+ * {@link PipelinedCat}, which opens, mounts and decompresses up to
+ * {@code <n>} files ahead of the file which currently gets written.
+ * The option {@code --budget=<bytes>} sets the maximum number of bytes to
+ * read ahead and defaults to 64 MiB.
+ * The option {@code --chunk=<bytes>} sets the size of each buffer and
+ * defaults to 64 KiB.
  * 
  * @see    <a href="http://www.gnu.org/software/wget/">GNU Cat - Home Page</a>
  * @author Christian Schlichtherle
@@ -26,6 +37,18 @@ public class Cat1 extends Application<IOException> {
 
     @Override
     protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        args = options.operands();
+        if (options.has("lookahead")) {
+            final List<Path> paths = new ArrayList<>(args.length);
+            for (String arg : args) paths.add(new TPath(arg));
+            new PipelinedCat(
+                    options.getInt("lookahead", Runtime.getRuntime().availableProcessors()),
+                    options.getLong("budget", 64L * 1024 * 1024),
+                    options.getInt("chunk", 64 * 1024))
+                    .cat(paths, System.out);
+            return 0;
+        }
         for (String arg : args) {
             Path path = new TPath(arg);
             //Files.copy(path, System.out); // naive read-then-write loop implementation
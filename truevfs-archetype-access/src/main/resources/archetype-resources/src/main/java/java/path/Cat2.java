@@ -4,6 +4,10 @@
 package ${package}.java.path;
 
 import ${package}.java.Application;
+import ${package}.java.util.BufferPool;
+import ${package}.java.util.Options;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
@@ -16,6 +20,13 @@ import net.java.truevfs.access.TPath;
 /**
  * This command line utility concatenates the contents of the parameter paths
  * on the standard output.
+ * <p>
+ * By default, the contents get copied by a naive read-then-write loop.
+ * With the option {@code --channel}, the contents get copied by a
+ * {@link ChannelCat} instead, which uses {@code FileChannel.transferTo} for
+ * plain files and streams archive entries through a large buffer.
+ * The option {@code --buffer=<bytes>} sets the size of the buffer and
+ * defaults to 64 KiB.
  * 
  * @see    <a href="http://www.gnu.org/software/wget/">GNU Cat - Home Page</a>
  * @author Christian Schlichtherle
@@ -28,6 +39,19 @@ public class Cat2 extends Application<IOException> {
 
     @Override
     protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        args = options.operands();
+        if (options.has("channel")) {
+            // Don't close this channel or else the standard output gets
+            // closed, too.
+            final WritableByteChannel dst
+                    = new FileOutputStream(FileDescriptor.out).getChannel();
+            final ChannelCat cat = new ChannelCat(
+                    new BufferPool(options.getInt("buffer", 64 * 1024), 1));
+            for (String arg : args) cat.cat(new TPath(arg), dst);
+            return 0;
+        }
+
         final ByteBuffer buf = ByteBuffer.allocate(8096);
         final WritableByteChannel dst = Channels.newChannel(System.out);
         for (String arg : args) {
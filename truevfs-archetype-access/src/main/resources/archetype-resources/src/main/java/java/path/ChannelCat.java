@@ -0,0 +1,124 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.path;
+
+import ${package}.java.util.BufferPool;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import static java.nio.file.StandardOpenOption.READ;
+import net.java.truevfs.access.TPath;
+
+/**
+ * Copies the contents of files to a writable byte channel, choosing the
+ * fastest strategy for each file:
+ * <ul>
+ * <li>For a plain file in the platform file system, the contents get
+ *     transferred by {@link FileChannel${symbol_pound}transferTo}, which lets the operating
+ *     system copy the data without passing it through the JVM if the target
+ *     channel supports this.
+ * <li>For an archive file or an entry in an archive file, the contents get
+ *     read from an input stream into a heap array of the size of the
+ *     buffers in the {@link BufferPool} and written from there.
+ *     {@link Files${symbol_pound}newByteChannel} is not an option, because the TrueVFS
+ *     Kernel creates a cache entry for a byte channel, that is it first
+ *     copies the whole entry to a temporary file, while it streams the entry
+ *     for an input stream.
+ *     {@link Channels${symbol_pound}newChannel(InputStream)} is not an option either,
+ *     because it reads through an internal array of at most 8 KiB.
+ *     An archive file must not get read from the platform file system,
+ *     because this would bypass any uncommitted changes to its entries.
+ * </ul>
+ * In the first case, any remainder gets copied through a direct byte buffer
+ * from the {@link BufferPool}.
+ * This class is thread-safe if its buffer pool is.
+ */
+public final class ChannelCat {
+
+    private final BufferPool pool;
+
+    public ChannelCat(final BufferPool pool) {
+        this.pool = Objects.requireNonNull(pool);
+    }
+
+    /**
+     * Copies the contents of the given file to the given channel.
+     *
+     * @return the number of bytes copied.
+     */
+    public long cat(final Path path, final WritableByteChannel dst)
+    throws IOException {
+        if (!isPlainFile(path)) {
+            try (InputStream src = Files.newInputStream(path)) {
+                return copy(src, dst);
+            }
+        } else {
+            try (FileChannel src = FileChannel.open(platformPath(path), READ)) {
+                final long size = src.size();
+                long position = 0;
+                while (position < size) {
+                    final long n = src.transferTo(position, size - position, dst);
+                    if (0 >= n) break;
+                    position += n;
+                }
+                // Copy any remainder if the target channel didn't accept
+                // more data or the file has grown meanwhile.
+                src.position(position);
+                return position + copy(src, dst);
+            }
+        }
+    }
+
+    private long copy(final InputStream src, final WritableByteChannel dst)
+    throws IOException {
+        final byte[] array = new byte[pool.bufferSize()];
+        long total = 0;
+        for (int n; -1 != (n = src.read(array)); ) {
+            final ByteBuffer buf = ByteBuffer.wrap(array, 0, n);
+            while (buf.hasRemaining()) total += dst.write(buf);
+        }
+        return total;
+    }
+
+    private long copy(
+            final ReadableByteChannel src,
+            final WritableByteChannel dst)
+    throws IOException {
+        final ByteBuffer buf = pool.acquire();
+        try {
+            long total = 0;
+            while (-1 != src.read(buf)) {
+                buf.flip();
+                while (buf.hasRemaining()) total += dst.write(buf);
+                buf.clear();
+            }
+            return total;
+        } finally {
+            pool.release(buf);
+        }
+    }
+
+    /**
+     * Returns {@code true} if the given path is neither an archive file nor
+     * an entry in an archive file.
+     */
+    private static boolean isPlainFile(Path path) {
+        return !(path instanceof TPath)
+                || null == ((TPath) path).toFile().getInnerArchive();
+    }
+
+    private static Path platformPath(Path path) {
+        return path instanceof TPath
+                ? Paths.get(((TPath) path).toFile().getPath())
+                : path;
+    }
+}
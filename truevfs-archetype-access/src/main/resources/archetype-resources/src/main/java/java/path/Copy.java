@@ -4,15 +4,19 @@
 package ${package}.java.path;
 
 import ${package}.java.Application;
+import ${package}.java.util.Options;
 import java.io.IOException;
+import java.nio.file.CopyOption;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
 import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import net.java.truevfs.access.TConfig;
 import net.java.truevfs.access.TPath;
 
 /**
- * This command line utility non-recursively copies the first file or directory
+ * This command line utility copies the first file or directory
  * argument to the second file or directory argument.
  * Instead of a directory, you can name any configured archive file type in
  * the path names, too.
@@ -23,6 +27,15 @@ import net.java.truevfs.access.TPath;
  * present on the run time class path and the destination path name is
  * {@code archive.zip}, a ZIP file with this name gets created unless it
  * already exists.
+ * <p>
+ * With the option {@code --recursive}, the source gets copied recursively
+ * by a {@link PathCopy}, using the NIO.2 API only.
+ * The option {@code --threads=<n>} sets the number of worker threads and
+ * defaults to the number of available processors.
+ * The option {@code --queue=<n>} sets the maximum number of pending files
+ * and defaults to four times the number of threads.
+ * The options {@code --no-attributes} and {@code --no-replace} drop the
+ * copy options {@code COPY_ATTRIBUTES} and {@code REPLACE_EXISTING}.
  * 
  * @author Christian Schlichtherle
  */
@@ -34,6 +47,9 @@ public class Copy extends Application<IOException> {
 
     @Override
     protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        args = options.operands();
+
         // Setup the file operands.
         TPath src = new TPath(args[0]);
         TPath dst = new TPath(args[1]);
@@ -54,13 +70,26 @@ public class Copy extends Application<IOException> {
         /*if (Files.isDirectory(dst))
             dst = dst.resolve(src.getFileName());*/
 
-        // Perform a non-recursive archive copy.
-        Files.copy(src, dst, COPY_ATTRIBUTES, REPLACE_EXISTING);
-        
-        // Okay, if this example should demonstrate a recursive copy, I'ld back
-        // out to the TrueVFS Access File* API as follows because a recursive copy
-        // with the NIO.2 API is way too complex for this most prominent use
-        // case.
+        // Setup the copy options.
+        final List<CopyOption> copyOptions = new ArrayList<>(2);
+        if (!options.has("no-attributes")) copyOptions.add(COPY_ATTRIBUTES);
+        if (!options.has("no-replace")) copyOptions.add(REPLACE_EXISTING);
+        final CopyOption[] array
+                = copyOptions.toArray(new CopyOption[copyOptions.size()]);
+
+        if (options.has("recursive")) {
+            // Perform a recursive archive copy.
+            final int threads = options.getInt("threads",
+                    Runtime.getRuntime().availableProcessors());
+            new PathCopy(threads, options.getInt("queue", 4 * threads), array)
+                    .copy(src, dst);
+        } else {
+            // Perform a non-recursive archive copy.
+            Files.copy(src, dst, array);
+        }
+
+        // If you prefer the TrueVFS Access File* API, then a recursive copy
+        // is as simple as this:
         //TFile.cp_rp(src.toFile(), dst.toFile(), TArchiveDetector.NULL);
 
         return 0;
@@ -0,0 +1,184 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.path;
+
+import java.io.IOException;
+import java.nio.file.CopyOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import static java.nio.file.StandardCopyOption.COPY_ATTRIBUTES;
+
+/**
+ * Recursively copies a file or directory tree using the NIO.2 API only.
+ * <p>
+ * The calling thread walks the source tree using
+ * {@link Files${symbol_pound}walkFileTree}, creates the target directories and submits
+ * a job for each file to a bounded work queue.
+ * A pool of worker threads copies the files using
+ * {@link Files${symbol_pound}copy(Path, Path, CopyOption...)}, so the files of
+ * different subtrees get copied concurrently.
+ * If the queue is full, the calling thread copies the file itself, so it
+ * cannot run ahead of the workers.
+ * If multiple workers write to the same target archive file at the same
+ * time, then the TrueVFS Kernel buffers all but one entry in temporary
+ * files.
+ * <p>
+ * If the copy options include {@code COPY_ATTRIBUTES}, then the last
+ * modification time of the target directories gets restored after all
+ * files have been copied.
+ */
+public final class PathCopy {
+
+    private final int threads;
+    private final int queueSize;
+    private final CopyOption[] options;
+
+    /**
+     * Constructs a new path copy.
+     *
+     * @param threads the number of worker threads.
+     * @param queueSize the maximum number of pending jobs.
+     * @param options the options for copying each file or directory, e.g.
+     *        {@code COPY_ATTRIBUTES} and {@code REPLACE_EXISTING}.
+     */
+    public PathCopy(
+            final int threads,
+            final int queueSize,
+            final CopyOption... options) {
+        if (0 >= threads)
+            throw new IllegalArgumentException(threads + " (number of threads must be positive)");
+        if (0 >= queueSize)
+            throw new IllegalArgumentException(queueSize + " (queue size must be positive)");
+        this.threads = threads;
+        this.queueSize = queueSize;
+        this.options = options.clone();
+    }
+
+    /**
+     * Recursively copies the source file or directory to the destination
+     * file or directory.
+     *
+     * @throws IOException if any file or directory cannot get copied.
+     *         Copying continues for all other files and the first exception
+     *         gets thrown with all others suppressed.
+     */
+    public void copy(final Path src, final Path dst) throws IOException {
+        final Run run = new Run(Objects.requireNonNull(src), Objects.requireNonNull(dst));
+        try {
+            Files.walkFileTree(src, run);
+        } catch (IOException ex) {
+            run.fail(ex);
+        } finally {
+            run.finish();
+        }
+    }
+
+    /** The state of a single run of {@link ${symbol_pound}copy}. */
+    private final class Run extends SimpleFileVisitor<Path> {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        final List<Path[]> directories = new ArrayList<>();
+        final Path src, dst;
+        IOException failure;
+
+        Run(final Path src, final Path dst) {
+            this.src = src;
+            this.dst = dst;
+        }
+
+        Path target(Path path) {
+            return dst.resolve(src.relativize(path).toString());
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(
+                final Path dir,
+                final BasicFileAttributes attrs)
+        throws IOException {
+            final Path target = target(dir);
+            if (!Files.isDirectory(target)) Files.copy(dir, target, options);
+            directories.add(new Path[] { dir, target });
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(
+                final Path file,
+                final BasicFileAttributes attrs) {
+            final Path target = target(file);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Files.copy(file, target, options);
+                    } catch (IOException ex) {
+                        fail(ex);
+                    } catch (RuntimeException ex) {
+                        // Don't let the copy succeed anyway.
+                        fail(new IOException(file + " (cannot copy file)", ex));
+                    }
+                }
+            });
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException ex) {
+            fail(ex);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException ex) {
+            if (null != ex) fail(ex);
+            return FileVisitResult.CONTINUE;
+        }
+
+        void finish() throws IOException {
+            executor.shutdown();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    if (executor.awaitTermination(1, TimeUnit.SECONDS)) break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            // Copying the members updates the last modification time of a
+            // directory, so it has to get restored afterwards.
+            if (Arrays.asList(options).contains(COPY_ATTRIBUTES)) {
+                for (int i = directories.size(); 0 <= --i; ) {
+                    final Path[] pair = directories.get(i);
+                    try {
+                        Files.setLastModifiedTime(pair[1],
+                                Files.getLastModifiedTime(pair[0]));
+                    } catch (IOException ex) {
+                        fail(ex);
+                    }
+                }
+            }
+            synchronized (this) {
+                if (null != failure) throw failure;
+            }
+        }
+
+        synchronized void fail(final IOException ex) {
+            if (null == failure) failure = ex;
+            else failure.addSuppressed(ex);
+        }
+    }
+}
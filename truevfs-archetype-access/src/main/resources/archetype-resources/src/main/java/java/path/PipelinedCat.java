@@ -0,0 +1,163 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.path;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Concatenates the contents of files to an output stream while opening,
+ * mounting and decompressing the next files ahead of time.
+ * <p>
+ * A pool of reader threads reads up to {@code lookahead} files ahead of the
+ * file which currently gets written.
+ * Each reader puts the contents of its file into a bounded queue of chunks.
+ * The calling thread writes the chunks of each file in order, so the output
+ * is the same as with a sequential implementation.
+ * The read-ahead budget gets divided evenly between the files in flight, so
+ * the memory held by all queues never exceeds it, and the reader of the
+ * current file never waits for any other file.
+ */
+public final class PipelinedCat {
+
+    private static final Chunk EOF = new Chunk(new byte[0], 0);
+
+    private final int lookahead;
+    private final int chunkSize;
+    private final int chunksPerFile;
+
+    /**
+     * Constructs a new pipelined cat.
+     *
+     * @param lookahead the number of files to read ahead of the file which
+     *        currently gets written.
+     * @param budget the maximum number of bytes to buffer for all files.
+     * @param chunkSize the size of each chunk in bytes.
+     */
+    public PipelinedCat(
+            final int lookahead,
+            final long budget,
+            final int chunkSize) {
+        if (0 > lookahead)
+            throw new IllegalArgumentException(lookahead + " (lookahead must not be negative)");
+        if (0 >= chunkSize)
+            throw new IllegalArgumentException(chunkSize + " (chunk size must be positive)");
+        this.lookahead = lookahead;
+        this.chunkSize = chunkSize;
+        // Each reader holds one more chunk while waiting for the queue.
+        this.chunksPerFile = (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                budget / (lookahead + 1) / chunkSize - 1));
+    }
+
+    /**
+     * Concatenates the contents of the given files to the given output
+     * stream.
+     * The output stream gets flushed, but not closed.
+     *
+     * @throws IOException if reading any file or writing the output stream
+     *         fails.
+     *         The contents of all preceding files have been written then.
+     */
+    public void cat(final List<? extends Path> paths, final OutputStream out)
+    throws IOException {
+        final ExecutorService readers
+                = Executors.newFixedThreadPool(lookahead + 1);
+        try {
+            // The executor starts the readers in order, so the reader of the
+            // current file is always running or done.
+            final List<Reader> slots = new ArrayList<>(paths.size());
+            for (final Path path : paths) {
+                final Reader reader = new Reader(path);
+                slots.add(reader);
+                readers.execute(reader);
+            }
+            for (final Reader reader : slots) {
+                for (Chunk chunk; EOF != (chunk = reader.take()); )
+                    out.write(chunk.buf, 0, chunk.len);
+            }
+            out.flush();
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+
+    private static final class Chunk {
+        final byte[] buf;
+        final int len;
+
+        Chunk(final byte[] buf, final int len) {
+            this.buf = buf;
+            this.len = len;
+        }
+    }
+
+    /** Reads a file into a bounded queue of chunks. */
+    private final class Reader implements Runnable {
+        final Path path;
+        final BlockingQueue<Chunk> chunks
+                = new LinkedBlockingQueue<>(chunksPerFile);
+        volatile Throwable failure;
+
+        Reader(final Path path) { this.path = path; }
+
+        @Override
+        public void run() {
+            boolean interrupted = false;
+            try (InputStream in = Files.newInputStream(path)) {
+                while (true) {
+                    final byte[] buf = new byte[chunkSize];
+                    int len = 0;
+                    for (int n; len < chunkSize
+                            && 0 <= (n = in.read(buf, len, chunkSize - len)); )
+                        len += n;
+                    if (0 < len) chunks.put(new Chunk(buf, len));
+                    if (len < chunkSize) break;
+                }
+            } catch (InterruptedException ex) {
+                // The writer has given up.
+                interrupted = true;
+            } catch (Throwable ex) {
+                // Pass any failure, including an Error, on to the writer.
+                failure = ex;
+            } finally {
+                // Don't let the writer wait forever.
+                if (!interrupted) {
+                    try {
+                        chunks.put(EOF);
+                    } catch (InterruptedException ex) {
+                        // The writer has given up.
+                    }
+                }
+            }
+        }
+
+        /** Returns the next chunk or {@code EOF}. */
+        Chunk take() throws IOException {
+            final Chunk chunk;
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException ex) {
+                throw (IOException) new InterruptedIOException()
+                        .initCause(ex);
+            }
+            final Throwable failure = this.failure;
+            if (EOF == chunk && null != failure) {
+                if (failure instanceof IOException) throw (IOException) failure;
+                if (failure instanceof Error) throw (Error) failure;
+                throw new IOException(path + " (cannot read file)", failure);
+            }
+            return chunk;
+        }
+    }
+}
@@ -4,17 +4,14 @@
 package ${package}.java.path;
 
 import ${package}.java.Application;
+import ${package}.java.util.ForkJoinGraph;
+import ${package}.java.util.Options;
+import ${package}.java.util.PathTreeModel;
+import ${package}.java.util.Stopwatch;
+import ${package}.java.util.TreeGraph;
+import ${package}.java.util.TreePrinter;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
-import static java.nio.file.Files.exists;
-import static java.nio.file.Files.isDirectory;
-import java.nio.file.Path;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.TreeSet;
 import net.java.truevfs.access.TPath;
-import net.java.truevfs.kernel.spec.FsSyncException;
 
 /**
  * This command line utility prints the tree graph of the directory structure
@@ -26,52 +23,54 @@ import net.java.truevfs.kernel.spec.FsSyncException;
  * on the run time class path and the path name argument is {@code archive.zip}
  * and this file actually exists as a ZIP file, then the tree graph of the
  * directory structure of this ZIP file gets printed.
+ * <p>
+ * With the option {@code --parallel[=<n>]}, sibling directories and archive
+ * files get listed and mounted concurrently by up to {@code <n>} threads,
+ * which defaults to the number of available processors.
+ * The output is the same as without this option.
+ * <p>
+ * With the option {@code --unsorted}, the members of each directory get
+ * printed in the order which the directory stream yields them.
+ * This saves collecting and sorting them, which matters for directories or
+ * archive files with a huge number of entries.
+ * <p>
+ * With the option {@code --stats}, the number of printed lines, the elapsed
+ * wall time and the heap allocations of the main thread get printed to the
+ * standard error output.
  *
  * @author  Christian Schlichtherle
  */
 public class Tree extends Application<IOException> {
 
-    private static final String DEFAULT_PREFIX  = "|-- ";
-    private static final String LAST_PREFIX     = "`-- ";
-    private static final String DEFAULT_PADDING = "|   ";
-    private static final String LAST_PADDING    = "    ";
-
     public static void main(String[] args) throws IOException {
         System.exit(new Tree().run(args));
     }
 
     @Override
     protected int work(String[] args) throws IOException {
+        final Options options = new Options(args);
+        final int parallelism = options.has("parallel")
+                ? options.getInt("parallel", Runtime.getRuntime().availableProcessors())
+                : 0;
+        final boolean sorted = !options.has("unsorted");
+        args = options.operands();
         if (0 >= args.length) args = new String[] { "." };
-        for (String arg : args) graph(new TPath(arg), "", "");
-        return 0;
-    }
-
-    private void graph(
-            final Path file,
-            final String padding,
-            final String prefix)
-    throws IOException {
-        if (!exists(file))
-            throw new IllegalArgumentException(file + " (file or directory does not exist)");
-        System.out.append(padding).append(prefix).println(file.getFileName());
-        if (isDirectory(file)) {
-            final Set<Path> entries = new TreeSet<>();
-            try (DirectoryStream<Path> stream = Files.newDirectoryStream(file)) {
-                for (Path member : stream) entries.add(member);
-            }
-            final int l = entries.size() - 1;
-            if (0 <= l) {
-                String nextPadding = padding;
-                if (0 < prefix.length())
-                    nextPadding += LAST_PREFIX.equals(prefix)
-                            ? LAST_PADDING
-                            : DEFAULT_PADDING;
-                final Iterator<Path> it = entries.iterator();
-                for (int i = 0; i++ < l; )
-                    graph(it.next(), nextPadding, DEFAULT_PREFIX);
-                graph(it.next(), nextPadding, LAST_PREFIX);
+        final Stopwatch stopwatch = new Stopwatch();
+        final TreePrinter printer = new TreePrinter(System.out);
+        try {
+            for (String arg : args) {
+                if (0 < parallelism)
+                    new ForkJoinGraph<>(new PathTreeModel(), parallelism, sorted)
+                            .graph(new TPath(arg), printer);
+                else
+                    new TreeGraph<>(new PathTreeModel(), sorted)
+                            .graph(new TPath(arg), printer);
             }
+        } finally {
+            printer.flush();
         }
+        if (options.has("stats"))
+            System.err.println(printer.lines() + " lines, " + stopwatch);
+        return 0;
     }
 }
@@ -0,0 +1,276 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import javax.swing.Icon;
+import javax.swing.JFileChooser;
+import javax.swing.SwingUtilities;
+import javax.swing.filechooser.FileSystemView;
+import net.java.truevfs.access.TFile;
+
+/**
+ * Decorates the file system view of a file chooser so that archive files get
+ * mounted and listed by worker threads instead of the event dispatch thread
+ * (EDT).
+ * <p>
+ * When the file chooser asks for the members of an archive file or a
+ * directory in an archive file, a worker thread mounts the archive file and
+ * streams its members.
+ * Until it's done, this view answers with the members which have arrived so
+ * far and makes the file chooser rescan its current directory whenever
+ * another chunk of members has arrived, so the view fills up incrementally.
+ * Finished listings get put into a {@link ListingCache}, so browsing a
+ * recently browsed archive file again doesn't need to wait for it.
+ * Selecting an archive file starts loading it ahead of opening it.
+ * <p>
+ * While an archive file is loading, the EDT doesn't wait for it: asking if
+ * it's traversable on the EDT answers {@code true}, because archive files
+ * get detected by their name.
+ * Plain directories get listed by the decorated view as usual.
+ */
+public final class BackgroundFileSystemView extends FileSystemView {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final long CHUNK_NANOS = 100 * 1000 * 1000;
+
+    private final FileSystemView view;
+    private final JFileChooser chooser;
+    private final ListingCache cache;
+    private final ExecutorService executor;
+    private final ConcurrentMap<File, Loader> loaders
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The last finished loader, which serves its listing if it has failed or
+     * exceeded the budget of the cache, so that rescanning doesn't start
+     * loading it again.
+     */
+    private volatile Loader finished;
+
+    /**
+     * Constructs a new background file system view.
+     *
+     * @param view the decorated file system view.
+     * @param chooser the file chooser to rescan when another chunk of members
+     *        has arrived.
+     * @param cache the cache for the finished listings.
+     * @param executor the executor for the worker threads.
+     */
+    public BackgroundFileSystemView(
+            final FileSystemView view,
+            final JFileChooser chooser,
+            final ListingCache cache,
+            final ExecutorService executor) {
+        this.view = Objects.requireNonNull(view);
+        this.chooser = Objects.requireNonNull(chooser);
+        this.cache = Objects.requireNonNull(cache);
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    /**
+     * Returns {@code true} if and only if the given file is an archive file
+     * or an entry in an archive file, judging by its path name only.
+     */
+    private static boolean isArchived(final File file) {
+        if (!(file instanceof TFile)) return false;
+        final TFile tfile = (TFile) file;
+        return tfile.isArchive() || tfile.isEntry();
+    }
+
+    /** Starts loading the given archive file or directory in the background. */
+    public void load(final File directory) {
+        if (!isArchived(directory) || null != cache.get(directory)) return;
+        loader(directory);
+    }
+
+    private Loader loader(final File directory) {
+        Loader loader = loaders.get(directory);
+        if (null == loader) {
+            final Loader created = new Loader(directory);
+            loader = loaders.putIfAbsent(directory, created);
+            if (null == loader) {
+                loader = created;
+                executor.execute(loader);
+            }
+        }
+        return loader;
+    }
+
+    @Override
+    public File[] getFiles(final File directory, final boolean useFileHiding) {
+        if (!isArchived(directory))
+            return view.getFiles(directory, useFileHiding);
+        File[] members = cache.get(directory);
+        if (null == members) {
+            final Loader last = finished;
+            members = null != last && directory.equals(last.directory)
+                    ? last.members()
+                    : loader(directory).members();
+        }
+        if (!useFileHiding) return members;
+        final List<File> visible = new ArrayList<>(members.length);
+        for (final File member : members)
+            if (!view.isHiddenFile(member)) visible.add(member);
+        return visible.toArray(new File[visible.size()]);
+    }
+
+    @Override
+    public Boolean isTraversable(final File file) {
+        if (SwingUtilities.isEventDispatchThread() && file instanceof TFile
+                && ((TFile) file).isArchive() && null == cache.get(file)) {
+            load(file);
+            return Boolean.TRUE;
+        }
+        return view.isTraversable(file);
+    }
+
+    @Override
+    public File createNewFolder(File containingDir) throws IOException {
+        return view.createNewFolder(containingDir);
+    }
+
+    @Override
+    public boolean isRoot(File f) { return view.isRoot(f); }
+
+    @Override
+    public String getSystemDisplayName(File f) {
+        return view.getSystemDisplayName(f);
+    }
+
+    @Override
+    public String getSystemTypeDescription(File f) {
+        return view.getSystemTypeDescription(f);
+    }
+
+    @Override
+    public Icon getSystemIcon(File f) { return view.getSystemIcon(f); }
+
+    @Override
+    public boolean isParent(File folder, File file) {
+        return view.isParent(folder, file);
+    }
+
+    @Override
+    public File getChild(File parent, String fileName) {
+        return view.getChild(parent, fileName);
+    }
+
+    @Override
+    public boolean isFileSystem(File f) { return view.isFileSystem(f); }
+
+    @Override
+    public boolean isHiddenFile(File f) { return view.isHiddenFile(f); }
+
+    @Override
+    public boolean isFileSystemRoot(File dir) {
+        return view.isFileSystemRoot(dir);
+    }
+
+    @Override
+    public boolean isDrive(File dir) { return view.isDrive(dir); }
+
+    @Override
+    public boolean isFloppyDrive(File dir) { return view.isFloppyDrive(dir); }
+
+    @Override
+    public boolean isComputerNode(File dir) {
+        return view.isComputerNode(dir);
+    }
+
+    @Override
+    public File[] getRoots() { return view.getRoots(); }
+
+    @Override
+    public File getHomeDirectory() { return view.getHomeDirectory(); }
+
+    @Override
+    public File getDefaultDirectory() { return view.getDefaultDirectory(); }
+
+    @Override
+    public File createFileObject(File dir, String filename) {
+        return view.createFileObject(dir, filename);
+    }
+
+    @Override
+    public File createFileObject(String path) {
+        return view.createFileObject(path);
+    }
+
+    @Override
+    public File getParentDirectory(File dir) {
+        return view.getParentDirectory(dir);
+    }
+
+    /** Mounts and lists a directory on a worker thread. */
+    private final class Loader implements Runnable {
+        final File directory;
+        final List<File> members = new ArrayList<>();
+
+        Loader(final File directory) { this.directory = directory; }
+
+        /** Returns the members which have arrived so far. */
+        synchronized File[] members() {
+            return members.toArray(new File[members.size()]);
+        }
+
+        @Override
+        public void run() {
+            try {
+                final Path path = ((TFile) directory).toPath();
+                try (DirectoryStream<Path> stream
+                        = Files.newDirectoryStream(path)) {
+                    final List<File> chunk = new ArrayList<>(CHUNK_SIZE);
+                    long published = System.nanoTime();
+                    for (final Path member : stream) {
+                        chunk.add(member.toFile());
+                        if (CHUNK_SIZE <= chunk.size()
+                                || CHUNK_NANOS <= System.nanoTime() - published) {
+                            publish(chunk);
+                            published = System.nanoTime();
+                        }
+                    }
+                    publish(chunk);
+                }
+                cache.put(directory, members());
+            } catch (IOException | RuntimeException ex) {
+                // Like a plain directory which can't get listed, show no
+                // (more) members.
+            } finally {
+                finished = this;
+                loaders.remove(directory, this);
+                rescan();
+            }
+        }
+
+        private void publish(final List<File> chunk) {
+            if (chunk.isEmpty()) return;
+            synchronized (this) {
+                members.addAll(chunk);
+            }
+            chunk.clear();
+            rescan();
+        }
+
+        private void rescan() {
+            SwingUtilities.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    if (directory.equals(chooser.getCurrentDirectory()))
+                        chooser.rescanCurrentDirectory();
+                }
+            });
+        }
+    }
+}
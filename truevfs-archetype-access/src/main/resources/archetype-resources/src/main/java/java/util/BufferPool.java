@@ -0,0 +1,51 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A pool of direct byte buffers of the same size.
+ * Allocating a direct buffer is expensive, so the buffers get reused.
+ * If the pool is empty, a new buffer gets allocated.
+ * If the pool is full, a released buffer gets left to the garbage collector.
+ * This class is thread-safe.
+ */
+public final class BufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    /**
+     * Constructs a new buffer pool.
+     *
+     * @param bufferSize the size of each buffer in bytes.
+     * @param capacity the maximum number of buffers to keep.
+     */
+    public BufferPool(final int bufferSize, final int capacity) {
+        if (0 >= bufferSize)
+            throw new IllegalArgumentException(bufferSize + " (buffer size must be positive)");
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /** Returns the size of each buffer in bytes. */
+    public int bufferSize() { return bufferSize; }
+
+    /** Returns a cleared buffer from the pool or a new one. */
+    public ByteBuffer acquire() {
+        final ByteBuffer buffer = buffers.poll();
+        return null != buffer ? buffer : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /** Returns the given buffer to the pool. */
+    public void release(final ByteBuffer buffer) {
+        if (bufferSize != buffer.capacity() || !buffer.isDirect())
+            throw new IllegalArgumentException("Buffer not from this pool.");
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+}
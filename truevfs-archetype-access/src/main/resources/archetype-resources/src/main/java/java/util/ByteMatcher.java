@@ -0,0 +1,60 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.util.Arrays;
+
+/**
+ * Finds a byte sequence in a byte array with the Boyer-Moore-Horspool
+ * algorithm.
+ * This avoids decoding the searched data into characters, which is faster
+ * if the pattern is a string literal and the data uses the same encoding,
+ * e.g. UTF-8 or any ASCII superset.
+ * Instances are immutable, so they can get reused by multiple threads.
+ */
+public final class ByteMatcher {
+
+    private final byte[] pattern;
+    private final int[] shifts = new int[256];
+
+    /**
+     * Constructs a new byte matcher.
+     *
+     * @param pattern the non-empty byte sequence to search for.
+     */
+    public ByteMatcher(final byte[] pattern) {
+        if (0 == pattern.length)
+            throw new IllegalArgumentException("The pattern must not be empty.");
+        this.pattern = pattern.clone();
+        final int last = pattern.length - 1;
+        Arrays.fill(shifts, pattern.length);
+        for (int i = 0; i < last; i++) shifts[pattern[i] & 0xff] = last - i;
+    }
+
+    /** Returns the length of the pattern. */
+    public int length() { return pattern.length; }
+
+    /**
+     * Returns the index of the first occurrence of the pattern in the given
+     * region of the given array or -1 if there is none.
+     *
+     * @param buf the array to search.
+     * @param from the start index of the region, inclusive.
+     * @param to the end index of the region, exclusive.
+     */
+    public int indexOf(final byte[] buf, final int from, final int to) {
+        final byte[] p = pattern;
+        final int last = p.length - 1;
+        for (int i = from; i + last < to; ) {
+            final byte b = buf[i + last];
+            if (b == p[last]) {
+                int j = last - 1;
+                while (0 <= j && buf[i + j] == p[j]) j--;
+                if (0 > j) return i;
+            }
+            i += shifts[b & 0xff];
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,248 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Random;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileOutputStream;
+
+/**
+ * Generates a synthetic corpus of entries in an archive file for benchmarks
+ * and load tests.
+ * The archive type is determined by the extension of the target file, e.g.
+ * {@code corpus.zip}, {@code corpus.jar} or {@code corpus.tar.gz}, so any
+ * archive type which is configured for TrueVFS can get generated.
+ * <p>
+ * The corpus is fully determined by the properties of this generator:
+ * Two runs with the same properties produce the same entry names, sizes,
+ * contents and last modification times.
+ * The contents of each entry depend only on the seed and the index of the
+ * entry, so they get generated in constant memory, even for huge entries.
+ * <p>
+ * If the nesting level is positive, then each entry gets written into a
+ * chain of nested archive files of the given depth.
+ * At each level, there are as many nested archive files as the fanout.
+ */
+public final class CorpusGenerator {
+
+    /** The distribution of the entry sizes. */
+    public enum Distribution {
+        /** All entries have the mean size. */
+        FIXED,
+        /** The sizes are uniformly distributed between zero and twice the mean. */
+        UNIFORM,
+        /** The sizes are exponentially distributed. */
+        EXPONENTIAL,
+        /**
+         * The sizes are log-normally distributed, which results in many small
+         * and a few huge entries.
+         */
+        LOGNORMAL
+    }
+
+    private static final int CHUNK = 4096;
+    private static final long EPOCH = 946684800000L; // 2000-01-01T00:00:00Z
+    private static final byte[] PHRASE = ("The quick brown fox jumps over the lazy dog. "
+            + "Pack my box with five dozen liquor jugs. ")
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private long entries = 1000;
+    private long meanSize = 4096;
+    private long maxSize = Long.MAX_VALUE;
+    private Distribution distribution = Distribution.FIXED;
+    private int depth = 2;
+    private int fanout = 10;
+    private int compressibility = 50;
+    private int nesting;
+    private String[] nestedFormats = { "zip" };
+    private long seed;
+
+    /** Sets the number of entries. */
+    public CorpusGenerator entries(final long entries) {
+        if (0 > entries)
+            throw new IllegalArgumentException(entries + " (number of entries must not be negative)");
+        this.entries = entries;
+        return this;
+    }
+
+    /** Sets the mean size of the entries in bytes. */
+    public CorpusGenerator meanSize(final long meanSize) {
+        if (0 > meanSize)
+            throw new IllegalArgumentException(meanSize + " (mean size must not be negative)");
+        this.meanSize = meanSize;
+        return this;
+    }
+
+    /** Sets the maximum size of the entries in bytes. */
+    public CorpusGenerator maxSize(final long maxSize) {
+        if (0 > maxSize)
+            throw new IllegalArgumentException(maxSize + " (maximum size must not be negative)");
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /** Sets the distribution of the entry sizes. */
+    public CorpusGenerator distribution(final Distribution distribution) {
+        this.distribution = distribution;
+        return this;
+    }
+
+    /** Sets the number of directory levels below each archive file. */
+    public CorpusGenerator depth(final int depth) {
+        if (0 > depth)
+            throw new IllegalArgumentException(depth + " (depth must not be negative)");
+        this.depth = depth;
+        return this;
+    }
+
+    /**
+     * Sets the number of subdirectories of each directory and the number of
+     * nested archive files at each nesting level.
+     */
+    public CorpusGenerator fanout(final int fanout) {
+        if (0 >= fanout)
+            throw new IllegalArgumentException(fanout + " (fanout must be positive)");
+        this.fanout = fanout;
+        return this;
+    }
+
+    /**
+     * Sets the compressibility of the entry contents in percent.
+     * Zero results in random bytes, one hundred results in repeated text.
+     */
+    public CorpusGenerator compressibility(final int compressibility) {
+        if (0 > compressibility || 100 < compressibility)
+            throw new IllegalArgumentException(compressibility + " (compressibility must be between 0 and 100)");
+        this.compressibility = compressibility;
+        return this;
+    }
+
+    /** Sets the number of levels of nested archive files. */
+    public CorpusGenerator nesting(final int nesting) {
+        if (0 > nesting)
+            throw new IllegalArgumentException(nesting + " (nesting must not be negative)");
+        this.nesting = nesting;
+        return this;
+    }
+
+    /**
+     * Sets the extensions of the nested archive files, e.g. {@code zip} or
+     * {@code tar.gz}.
+     * The extensions get used in turn for each nesting level.
+     */
+    public CorpusGenerator nestedFormats(final String... nestedFormats) {
+        if (0 >= nestedFormats.length)
+            throw new IllegalArgumentException("No nested formats.");
+        this.nestedFormats = nestedFormats.clone();
+        return this;
+    }
+
+    /** Sets the seed for the pseudo random number generators. */
+    public CorpusGenerator seed(final long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Generates the corpus in the given target archive file.
+     * The target archive file doesn't get synced, so you should call
+     * {@code TVFS.umount()} afterwards.
+     *
+     * @param  target the target archive file.
+     * @param  names the collection for adding the paths of the generated
+     *         entries relative to the target archive file or {@code null}.
+     * @return the total number of bytes written.
+     */
+    public long generate(final TFile target, final Collection<String> names)
+    throws IOException {
+        final Random layout = new Random(seed);
+        final byte[] buf = new byte[CHUNK];
+        final byte[] noise = new byte[CHUNK];
+        long total = 0;
+        for (long i = 0; i < entries; i++) {
+            final String name = name(layout, i);
+            final long size = size(layout);
+            final TFile file = new TFile(target, name);
+            final Random content = new Random(seed ^ (i * 0x9E3779B97F4A7C15L));
+            try (OutputStream out = new TFileOutputStream(file)) {
+                for (long written = 0; written < size; ) {
+                    final int n = (int) Math.min(CHUNK, size - written);
+                    fill(content, buf, noise, written, n);
+                    out.write(buf, 0, n);
+                    written += n;
+                }
+            }
+            if (!file.setLastModified(EPOCH + (layout.nextInt(365 * 24 * 60 * 60) * 1000L)))
+                throw new IOException(file + " (cannot set last modification time)");
+            if (null != names) names.add(name);
+            total += size;
+        }
+        return total;
+    }
+
+    private String name(final Random layout, final long index) {
+        final StringBuilder name = new StringBuilder();
+        for (int level = 0; level < nesting; level++)
+            name    .append("nested")
+                    .append(layout.nextInt(fanout))
+                    .append('.')
+                    .append(nestedFormats[level % nestedFormats.length])
+                    .append('/');
+        for (int level = 0; level < depth; level++)
+            name.append("dir").append(layout.nextInt(fanout)).append('/');
+        return name
+                .append("entry")
+                .append(index)
+                .append(50 <= compressibility ? ".txt" : ".bin")
+                .toString();
+    }
+
+    private long size(final Random layout) {
+        final double size;
+        switch (distribution) {
+            case FIXED:
+                size = meanSize;
+                break;
+            case UNIFORM:
+                size = 2 * meanSize * layout.nextDouble();
+                break;
+            case EXPONENTIAL:
+                size = -meanSize * Math.log(1 - layout.nextDouble());
+                break;
+            case LOGNORMAL:
+                final double sigma = 1.5;
+                final double mu = Math.log(Math.max(1, meanSize)) - sigma * sigma / 2;
+                size = Math.exp(mu + sigma * layout.nextGaussian());
+                break;
+            default:
+                throw new AssertionError(distribution);
+        }
+        return Math.min(maxSize, (long) size);
+    }
+
+    private void fill(
+            final Random content,
+            final byte[] buf,
+            final byte[] noise,
+            final long offset,
+            final int length) {
+        final int text = length * compressibility / 100;
+        for (int i = 0; i < text; i++)
+            buf[i] = PHRASE[(int) ((offset + i) % PHRASE.length)];
+        if (text < length) {
+            content.nextBytes(noise);
+            System.arraycopy(noise, 0, buf, text, length - text);
+        }
+    }
+
+    /** Parses the name of a distribution, ignoring case. */
+    public static Distribution distribution(String name) {
+        return Distribution.valueOf(name.toUpperCase(Locale.ENGLISH));
+    }
+}
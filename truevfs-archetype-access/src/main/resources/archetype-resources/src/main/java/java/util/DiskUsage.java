@@ -0,0 +1,354 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import net.java.truevfs.access.TArchiveDetector;
+import net.java.truevfs.access.TFile;
+
+/**
+ * Aggregates the number of entries, the uncompressed size and the compressed
+ * size of directory trees, including archive files, in a single parallel
+ * pass.
+ * <p>
+ * Each directory is a task in a {@link ForkJoinPool} which forks a task for
+ * each of its member directories and sums up their results, so the subtotals
+ * get computed bottom-up and only the totals of the directories are kept,
+ * never the files.
+ * If a ZIP file is not nested in another archive file, then its central
+ * directory gets read with a {@link ZipDirectory} instead of mounting it, so
+ * the sizes get read from the metadata in one go, even for millions of
+ * entries.
+ * Only the archive files which are nested in a ZIP file get mounted and
+ * walked.
+ * For any other file, the compressed size equals the uncompressed size,
+ * because the TrueVFS API doesn't provide the compressed size of an entry.
+ */
+public final class DiskUsage {
+
+    /** Compares the subtrees by descending size. */
+    private static final Comparator<Usage> LARGEST_FIRST
+            = new Comparator<Usage>() {
+        @Override
+        public int compare(Usage o1, Usage o2) {
+            return Long.compare(o2.size, o1.size);
+        }
+    };
+
+    /**
+     * Compares directory entry names ending with a slash so that the members
+     * of a directory come before the directory.
+     */
+    private static final Comparator<String> POST_ORDER
+            = new Comparator<String>() {
+        @Override
+        public int compare(final String o1, final String o2) {
+            final int n = Math.min(o1.length(), o2.length());
+            for (int i = 0; i < n; i++) {
+                final int c = o1.charAt(i) - o2.charAt(i);
+                if (0 != c) return c;
+            }
+            return o2.length() - o1.length();
+        }
+    };
+
+    private final int parallelism, depth, top;
+    private final PriorityQueue<Usage> largest;
+
+    /**
+     * Constructs a new disk usage.
+     *
+     * @param parallelism the maximum number of directories and archive files
+     *        to process concurrently.
+     * @param depth the maximum depth of the subtrees to report by
+     *        {@link Usage${symbol_pound}subtrees()}, where zero is the root.
+     * @param top the number of largest subtrees to track for
+     *        {@link ${symbol_pound}largest()}.
+     */
+    public DiskUsage(final int parallelism, final int depth, final int top) {
+        if (0 >= parallelism)
+            throw new IllegalArgumentException(parallelism + " (parallelism must be positive)");
+        if (0 > depth)
+            throw new IllegalArgumentException(depth + " (depth must not be negative)");
+        if (0 > top)
+            throw new IllegalArgumentException(top + " (top must not be negative)");
+        this.parallelism = parallelism;
+        this.depth = depth;
+        this.top = top;
+        this.largest = new PriorityQueue<>(top + 1, Collections.reverseOrder(LARGEST_FIRST));
+    }
+
+    /**
+     * Returns the disk usage of the given file or directory.
+     *
+     * @throws IOException if listing any directory or reading any ZIP file
+     *         fails.
+     */
+    public Usage measure(final File root) throws IOException {
+        final TFile file = root instanceof TFile ? (TFile) root : new TFile(root);
+        if (!file.exists())
+            throw new IllegalArgumentException(file + " (file or directory does not exist)");
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            final Task task = new Task(file, 0);
+            pool.execute(task);
+            return task.result();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the largest subtrees which have been measured so far, with the
+     * largest first.
+     * Subtrees are directories and archive files at any depth, including the
+     * roots.
+     */
+    public List<Usage> largest() {
+        final List<Usage> list;
+        synchronized (largest) {
+            list = new ArrayList<>(largest);
+        }
+        Collections.sort(list, LARGEST_FIRST);
+        return list;
+    }
+
+    /**
+     * Adds the totals of the given member subtree at the given level to the
+     * given parent subtree and moves the member and its subtrees to the
+     * parent if the level is within the reported depth.
+     */
+    private void add(final Usage parent, final Usage member, final int level) {
+        parent.add(member.entries, member.size, member.compressed);
+        if (level <= depth) {
+            parent.subtrees.addAll(member.subtrees);
+            member.subtrees.clear();
+            parent.subtrees.add(member);
+        }
+    }
+
+    private void offer(final Usage usage) {
+        if (0 >= top) return;
+        synchronized (largest) {
+            largest.add(usage);
+            if (top < largest.size()) largest.remove();
+        }
+    }
+
+    /** Measures a file or directory and forks tasks for its members. */
+    @SuppressWarnings("serial")
+    private final class Task extends RecursiveTask<Usage> {
+        final TFile file;
+        final int level;
+        IOException failure;
+
+        Task(final TFile file, final int level) {
+            this.file = file;
+            this.level = level;
+        }
+
+        @Override
+        protected Usage compute() {
+            try {
+                return measure();
+            } catch (IOException ex) {
+                failure = ex;
+                return null;
+            }
+        }
+
+        private Usage measure() throws IOException {
+            if (file.isArchive() && null == file.getEnclArchive()
+                    && file.getFile().isFile()) {
+                final Usage usage = zip();
+                if (null != usage) return usage;
+            }
+            if (!file.isDirectory()) {
+                final long length = file.length();
+                return new Usage(file.getPath(), 1, length, length);
+            }
+            final File[] members = file.listFiles();
+            if (null == members)
+                throw new IOException(file + " (cannot list directory)");
+            Arrays.sort(members);
+            final Usage usage = new Usage(file.getPath(), 1, 0, 0);
+            final List<Task> tasks = new ArrayList<>();
+            for (final File member : members) {
+                final TFile tmember = (TFile) member;
+                // Check for archive files first because asking them if
+                // they're directories would mount them.
+                if (tmember.isArchive() || tmember.isDirectory()) {
+                    final Task task = new Task(tmember, level + 1);
+                    task.fork();
+                    tasks.add(task);
+                } else {
+                    final long length = tmember.length();
+                    usage.add(1, length, length);
+                }
+            }
+            for (final Task task : tasks) add(usage, task.result(), level + 1);
+            offer(usage);
+            return usage;
+        }
+
+        /**
+         * Returns the usage of the ZIP file from its central directory or
+         * {@code null} if it's not a ZIP file.
+         */
+        private Usage zip() throws IOException {
+            final ZipDirectory directory;
+            try (FileChannel channel = new RandomAccessFile(
+                    file.getFile(), "r").getChannel()) {
+                try {
+                    directory = ZipDirectory.read(channel);
+                } catch (IOException ex) {
+                    // Not a ZIP file, so let the TrueVFS Kernel deal with it.
+                    return null;
+                }
+            }
+            // Map the names of the directory entries, ending with a slash, to
+            // their usage, where the empty name is the ZIP file.
+            final Map<String, Usage> dirs = new HashMap<>();
+            final Usage usage = new Usage(file.getPath(), 1, 0, 0);
+            dirs.put("", usage);
+            final TArchiveDetector detector = file.getArchiveDetector();
+            final Map<String, Task> nested = new LinkedHashMap<>();
+            for (final ZipDirectory.Entry entry : directory.entries()) {
+                final String name = entry.name();
+                if (entry.isDirectory()) {
+                    directory(dirs, name);
+                } else if (null != detector.scheme(name)) {
+                    // Archive files in the ZIP file must get mounted.
+                    final Task task = new Task(new TFile(file, name),
+                            level + depth(name));
+                    task.fork();
+                    nested.put(name + "/", task);
+                } else {
+                    directory(dirs, parent(name))
+                            .add(1, entry.size(), entry.compressedSize());
+                }
+            }
+            for (final Map.Entry<String, Task> entry : nested.entrySet()) {
+                final String name = entry.getKey();
+                directory(dirs, parent(name));
+                dirs.put(name, entry.getValue().result());
+            }
+            // Sum up the subtotals bottom-up.
+            final String[] names = dirs.keySet().toArray(new String[dirs.size()]);
+            Arrays.sort(names, POST_ORDER);
+            for (final String name : names) {
+                if (name.isEmpty()) continue;
+                final Usage dir = dirs.get(name);
+                add(dirs.get(parent(name)), dir, level + depth(name));
+                if (!nested.containsKey(name)) offer(dir);
+            }
+            offer(usage);
+            return usage;
+        }
+
+        /**
+         * Returns the usage of the named directory entry, adding it and its
+         * ancestors if they don't exist yet, because directory entries are
+         * optional in a ZIP file.
+         */
+        private Usage directory(
+                final Map<String, Usage> dirs,
+                final String name) {
+            Usage dir = dirs.get(name);
+            if (null == dir) {
+                dir = new Usage(file.getPath() + File.separator
+                        + name.substring(0, name.length() - 1)
+                            .replace('/', File.separatorChar),
+                        1, 0, 0);
+                dirs.put(name, dir);
+                directory(dirs, parent(name));
+            }
+            return dir;
+        }
+
+        /** Waits until this task is done and returns its result. */
+        Usage result() throws IOException {
+            final Usage usage = join();
+            if (null != failure) throw failure;
+            return usage;
+        }
+    }
+
+    /**
+     * Returns the name of the parent directory entry of the named entry,
+     * ending with a slash, or the empty string for the top level.
+     */
+    private static String parent(final String name) {
+        return name.substring(0, name.lastIndexOf('/', name.length() - 2) + 1);
+    }
+
+    /**
+     * Returns the depth of the named entry, where one is the top level.
+     * A trailing slash gets ignored.
+     */
+    private static int depth(final String name) {
+        int depth = 1;
+        for (int i = name.length() - 2; 0 <= i; i--)
+            if ('/' == name.charAt(i)) depth++;
+        return depth;
+    }
+
+    /** The disk usage of a file or subtree. */
+    public static final class Usage {
+        private final String path;
+        private final List<Usage> subtrees = new ArrayList<>();
+        private long entries, size, compressed;
+
+        Usage(  final String path,
+                final long entries,
+                final long size,
+                final long compressed) {
+            this.path = path;
+            this.entries = entries;
+            this.size = size;
+            this.compressed = compressed;
+        }
+
+        void add(final long entries, final long size, final long compressed) {
+            this.entries += entries;
+            this.size += size;
+            this.compressed += compressed;
+        }
+
+        public String path() { return path; }
+
+        /** Returns the number of files and directories in this subtree. */
+        public long entries() { return entries; }
+
+        /** Returns the total uncompressed size in bytes. */
+        public long size() { return size; }
+
+        /** Returns the total compressed size in bytes. */
+        public long compressed() { return compressed; }
+
+        /**
+         * Returns the directories and archive files in this subtree up to the
+         * configured depth in post-order, excluding this subtree.
+         * The subtrees get moved to the parent when summing up, so this is
+         * only complete for the root of a measurement.
+         */
+        public List<Usage> subtrees() {
+            return Collections.unmodifiableList(subtrees);
+        }
+    }
+}
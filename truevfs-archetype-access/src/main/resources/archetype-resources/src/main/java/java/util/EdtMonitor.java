@@ -0,0 +1,73 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+/**
+ * Measures how long the event dispatch thread (EDT) stalls.
+ * A daemon thread periodically posts a probe to the event queue and waits
+ * until it runs.
+ * The time between posting the probe and running it is the time which the
+ * EDT has been busy with other events, so the maximum of this time is the
+ * worst-case stall of the user interface, within the period of the probes.
+ */
+public final class EdtMonitor implements Closeable {
+
+    private static final long PERIOD_MILLIS = 10;
+
+    private final Thread thread;
+    private volatile boolean closed;
+    private volatile long maxNanos, probes;
+
+    /** Starts a new EDT monitor. */
+    public EdtMonitor() {
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() { probe(); }
+        }, "EDT Monitor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void probe() {
+        final Runnable noop = new Runnable() {
+            @Override
+            public void run() { }
+        };
+        try {
+            while (!closed) {
+                final long start = System.nanoTime();
+                SwingUtilities.invokeAndWait(noop);
+                final long nanos = System.nanoTime() - start;
+                if (maxNanos < nanos) maxNanos = nanos;
+                probes++;
+                Thread.sleep(PERIOD_MILLIS);
+            }
+        } catch (InterruptedException | InvocationTargetException ex) {
+            // Closed.
+        }
+    }
+
+    /** Returns the longest time which a probe had to wait in milliseconds. */
+    public long maxStallMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxNanos);
+    }
+
+    /** Stops probing. */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("worst EDT stall %d ms in %d probes",
+                maxStallMillis(), probes);
+    }
+}
@@ -0,0 +1,57 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A tree model for the File* API.
+ * Use it with a {@link net.java.truevfs.access.TFile} in order to browse
+ * archive files, too.
+ */
+public final class FileTreeModel implements TreeModel<File> {
+
+    @Override
+    public boolean exists(File node) { return node.exists(); }
+
+    @Override
+    public String name(File node) { return node.getName(); }
+
+    @Override
+    public boolean isDirectory(File node) { return node.isDirectory(); }
+
+    @Override
+    public List<File> children(final File directory) throws IOException {
+        final File[] entries = list(directory);
+        Arrays.sort(entries);
+        return Arrays.asList(entries);
+    }
+
+    @Override
+    public DirectoryStream<File> stream(final File directory)
+    throws IOException {
+        final File[] entries = list(directory);
+        return new DirectoryStream<File>() {
+            @Override
+            public Iterator<File> iterator() {
+                return Arrays.asList(entries).iterator();
+            }
+
+            @Override
+            public void close() { }
+        };
+    }
+
+    private static File[] list(final File directory) throws IOException {
+        final File[] entries = directory.listFiles();
+        if (null == entries)
+            throw new IOException(directory + " (cannot list directory)");
+        return entries;
+    }
+}
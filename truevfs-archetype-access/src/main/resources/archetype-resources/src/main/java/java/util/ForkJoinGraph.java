@@ -0,0 +1,271 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Prints the tree graph of a directory structure like the {@code Tree}
+ * samples do, but lists and mounts sibling directories and archive files
+ * concurrently in a {@link ForkJoinPool}.
+ * <p>
+ * Each file or directory is a task which probes if it exists and if it's a
+ * directory, which mounts an archive file, and lists its members if it's a
+ * directory.
+ * Then it forks a new task for each of its members, so sibling archive files
+ * get mounted concurrently.
+ * The calling thread prints the nodes in order and waits for each task when
+ * it gets there, so the output is exactly the same as with the sequential
+ * implementation.
+ * No task ever waits for another task, so the parallelism of the pool is a
+ * hard limit for the number of directories and archive files which get
+ * mounted and listed at the same time.
+ * <p>
+ * The tasks may run ahead of the printing by at most
+ * {@value ${symbol_pound}AHEAD_PER_THREAD} tasks per thread.
+ * Beyond that, the members of a directory get forked by the calling thread
+ * when it gets there.
+ * Printed nodes get dropped, so the heap footprint depends on this limit and
+ * the size of the directories, but not on the size of the entire tree.
+ *
+ * @param  <N> the type of the nodes.
+ */
+public final class ForkJoinGraph<N> {
+
+    /**
+     * The maximum number of tasks per thread which may get forked ahead of
+     * printing.
+     */
+    public static final int AHEAD_PER_THREAD = 256;
+
+    private final TreeModel<N> model;
+    private final int parallelism;
+    private final boolean sorted;
+
+    /**
+     * Constructs a new fork-join graph.
+     *
+     * @param model the tree model.
+     * @param parallelism the maximum number of directories and archive files
+     *        to mount and list concurrently.
+     * @param sorted whether or not to print the members of each directory in
+     *        sorted order.
+     */
+    public ForkJoinGraph(
+            final TreeModel<N> model,
+            final int parallelism,
+            final boolean sorted) {
+        this.model = Objects.requireNonNull(model);
+        if (0 >= parallelism)
+            throw new IllegalArgumentException(parallelism + " (parallelism must be positive)");
+        this.parallelism = parallelism;
+        this.sorted = sorted;
+    }
+
+    /**
+     * Prints the tree graph of the given file or directory to the given
+     * tree printer.
+     *
+     * @throws IOException if listing any directory fails.
+     */
+    public void graph(final N root, final TreePrinter printer)
+    throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            new Run(pool).graph(root, printer);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** The state of a single call to {@link ${symbol_pound}graph}. */
+    private final class Run {
+        final ForkJoinPool pool;
+        final Semaphore ahead = new Semaphore(AHEAD_PER_THREAD * parallelism);
+
+        Run(final ForkJoinPool pool) { this.pool = pool; }
+
+        /**
+         * Prints the given node and its members.
+         * The printed directories get tracked by an explicit stack instead of
+         * recursion, so this works for any depth of the tree.
+         */
+        void graph(final N root, final TreePrinter printer)
+        throws IOException {
+            final Node node = new Node(root);
+            submit(node);
+            final Deque<Members> stack = new ArrayDeque<>();
+            if (print(node, printer, true)) {
+                stack.push(new Members(node.take()));
+                printer.down();
+            }
+            for (Members members; null != (members = stack.peek()); ) {
+                if (!members.hasNext()) {
+                    stack.pop();
+                    printer.up();
+                    continue;
+                }
+                final Node member = members.next();
+                submit(member);
+                if (print(member, printer, !members.hasNext())) {
+                    stack.push(new Members(member.take()));
+                    printer.down();
+                }
+            }
+        }
+
+        /** Submits the given node unless it's been forked already. */
+        private void submit(final Node node) {
+            if (node.claim(false)) pool.execute(node);
+        }
+
+        /**
+         * Waits for the given node, prints it and returns {@code true} if and
+         * only if it's a directory.
+         */
+        private boolean print(
+                final Node node,
+                final TreePrinter printer,
+                final boolean last)
+        throws IOException {
+            node.await();
+            if (node.permitted) ahead.release();
+            node.check();
+            if (!node.exists)
+                throw new IllegalArgumentException(node.file + " (file or directory does not exist)");
+            printer.print(model.name(node.file), last);
+            return node.directory;
+        }
+
+        /**
+         * The members of a directory which are yet to be printed.
+         * Printed members get dropped from the list.
+         */
+        private final class Members {
+            final List<Node> nodes;
+            int next, forked;
+
+            Members(final List<Node> nodes) { this.nodes = nodes; }
+
+            boolean hasNext() { return next < nodes.size(); }
+
+            /**
+             * Forks as many of the following members as the limit permits
+             * and returns the next member.
+             */
+            Node next() {
+                while (forked < nodes.size() && ahead.tryAcquire()) {
+                    final Node node = nodes.get(forked++);
+                    if (null != node && node.claim(true)) pool.execute(node);
+                    else ahead.release();
+                }
+                return nodes.set(next++, null);
+            }
+        }
+
+        /**
+         * A file or directory which probes its properties and lists its
+         * members ahead of printing.
+         */
+        @SuppressWarnings("serial")
+        private final class Node extends RecursiveAction {
+            final N file;
+            final AtomicBoolean claimed = new AtomicBoolean();
+            final CountDownLatch done = new CountDownLatch(1);
+            boolean permitted, exists, directory;
+            List<Node> children;
+            Exception failure;
+
+            Node(final N file) { this.file = file; }
+
+            /**
+             * Claims this node for forking and returns {@code true} if it
+             * hasn't been claimed before.
+             *
+             * @param permitted whether or not a permit of the limit has been
+             *        acquired for this node.
+             */
+            boolean claim(final boolean permitted) {
+                if (!claimed.compareAndSet(false, true)) return false;
+                this.permitted = permitted;
+                return true;
+            }
+
+            @Override
+            protected void compute() {
+                try {
+                    exists = model.exists(file);
+                    directory = exists && model.isDirectory(file);
+                    if (!directory) return;
+                    final List<N> members = sorted
+                            ? model.children(file)
+                            : list(file);
+                    final List<Node> nodes = new ArrayList<>(members.size());
+                    for (final N member : members) nodes.add(new Node(member));
+                    children = nodes;
+                    for (final Node node : nodes) {
+                        if (!ahead.tryAcquire()) break;
+                        if (node.claim(true)) node.fork();
+                        else ahead.release();
+                    }
+                } catch (IOException | RuntimeException ex) {
+                    // Don't let the node pass for a missing file.
+                    failure = ex;
+                } finally {
+                    done.countDown();
+                }
+            }
+
+            private List<N> list(final N directory) throws IOException {
+                final List<N> members = new ArrayList<>();
+                try (DirectoryStream<N> stream = model.stream(directory)) {
+                    for (final N member : stream) members.add(member);
+                }
+                return members;
+            }
+
+            /** Waits until this node is done. */
+            void await() throws InterruptedIOException {
+                try {
+                    done.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+
+            /**
+             * Throws the exception which has occurred when probing or listing
+             * this node, if any.
+             */
+            void check() throws IOException {
+                if (failure instanceof IOException) throw (IOException) failure;
+                if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            }
+
+            /**
+             * Returns the members of this directory and drops them from this
+             * node.
+             */
+            List<Node> take() throws IOException {
+                check();
+                final List<Node> nodes = children;
+                children = null;
+                return nodes;
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import net.java.truevfs.access.TFile;
+
+/**
+ * A tree model for the File* API which serves the directory trees of top
+ * level archive files from a {@link ListingIndex}.
+ * <p>
+ * Nodes on the platform file system get accessed like with the
+ * {@link FileTreeModel}.
+ * When a walk reaches a top level archive file and the index has a valid
+ * listing for it, then the archive file and all its entries, including any
+ * nested archive files, get served from the listing without mounting it.
+ * Otherwise, the archive file gets mounted and walked once in order to build
+ * a new listing, which gets added to the index.
+ * Nested archive files are part of the listing of their top level archive
+ * file.
+ */
+public final class IndexedTreeModel implements TreeModel<IndexedTreeModel.Node> {
+
+    private static final Pattern SEPARATOR
+            = Pattern.compile(Pattern.quote(File.separator));
+
+    private final ListingIndex index;
+
+    /** Constructs a new indexed tree model. */
+    public IndexedTreeModel(final ListingIndex index) {
+        this.index = Objects.requireNonNull(index);
+    }
+
+    /**
+     * Returns the node for the given file.
+     * If the file is a {@link TFile} in a top level archive file, then the
+     * listing of the archive file gets looked up or built.
+     *
+     * @throws IOException if building a listing fails.
+     */
+    public Node node(final File file) throws IOException {
+        if (!(file instanceof TFile)) return new Node(file);
+        final TFile top = ((TFile) file).getTopLevelArchive();
+        if (null == top) return new Node(file);
+        final File archive = new File(top.getPath());
+        if (!archive.isFile()) return new Node(file);
+        final Listing listing = index.get(archive, top);
+        int node = Listing.ROOT;
+        final String path = file.getPath();
+        if (path.length() > top.getPath().length()) {
+            for (final String name : SEPARATOR.split(
+                    path.substring(top.getPath().length() + 1))) {
+                if (name.isEmpty()) continue;
+                if (!listing.isDirectory(node)) return new Node(file, listing, -1);
+                node = listing.find(node, name);
+                if (0 > node) return new Node(file, listing, -1);
+            }
+        }
+        return new Node(file, listing, node);
+    }
+
+    @Override
+    public boolean exists(Node node) {
+        return null == node.listing ? node.file.exists() : 0 <= node.index;
+    }
+
+    @Override
+    public String name(Node node) {
+        return null != node.file
+                ? node.file.getName()
+                : node.listing.name(node.index);
+    }
+
+    @Override
+    public boolean isDirectory(Node node) {
+        return null == node.listing
+                ? node.file.isDirectory()
+                : node.listing.isDirectory(node.index);
+    }
+
+    @Override
+    public List<Node> children(final Node directory) throws IOException {
+        if (null != directory.listing) return members(directory);
+        final File[] files = list(directory.file);
+        Arrays.sort(files);
+        final List<Node> members = new ArrayList<>(files.length);
+        for (final File file : files) members.add(node(file));
+        return members;
+    }
+
+    @Override
+    public DirectoryStream<Node> stream(final Node directory)
+    throws IOException {
+        final List<Node> members;
+        if (null != directory.listing) {
+            members = members(directory);
+        } else {
+            final File[] files = list(directory.file);
+            members = new ArrayList<>(files.length);
+            for (final File file : files) members.add(node(file));
+        }
+        return new DirectoryStream<Node>() {
+            @Override
+            public Iterator<Node> iterator() { return members.iterator(); }
+
+            @Override
+            public void close() { }
+        };
+    }
+
+    private static List<Node> members(final Node directory) {
+        final Listing listing = directory.listing;
+        final int index = directory.index;
+        final int size = Math.max(0, listing.children(index));
+        return new AbstractList<Node>() {
+            @Override
+            public Node get(int i) {
+                if (0 > i || i >= size)
+                    throw new IndexOutOfBoundsException();
+                return new Node(directory, listing.child(index, i));
+            }
+
+            @Override
+            public int size() { return size; }
+        };
+    }
+
+    private static File[] list(final File directory) throws IOException {
+        final File[] entries = directory.listFiles();
+        if (null == entries)
+            throw new IOException(directory + " (cannot list directory)");
+        return entries;
+    }
+
+    /**
+     * A node of an indexed tree model.
+     * This is either a file or an entry in the listing of a top level archive
+     * file.
+     */
+    public static final class Node {
+        final File file;
+        final Node parent;
+        final Listing listing;
+        final int index;
+
+        Node(final File file) { this(file, null, -1); }
+
+        Node(final File file, final Listing listing, final int index) {
+            this.file = file;
+            this.parent = null;
+            this.listing = listing;
+            this.index = index;
+        }
+
+        Node(final Node parent, final int index) {
+            this.file = null;
+            this.parent = parent;
+            this.listing = parent.listing;
+            this.index = index;
+        }
+
+        /** Returns the size of this node in bytes. */
+        public long size() {
+            return null != listing ? listing.size(index) : file.length();
+        }
+
+        @Override
+        public String toString() {
+            return null != file
+                    ? file.toString()
+                    : parent + File.separator + listing.name(index);
+        }
+    }
+}
@@ -0,0 +1,541 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import net.java.truecommons.cio.DecoratingInputSocket;
+import net.java.truecommons.cio.DecoratingOutputSocket;
+import net.java.truecommons.cio.Entry;
+import net.java.truecommons.cio.InputSocket;
+import net.java.truecommons.cio.OutputSocket;
+import net.java.truecommons.shed.BitField;
+import net.java.truecommons.shed.Filter;
+import net.java.truecommons.shed.Visitor;
+import net.java.truevfs.kernel.spec.FsAccessOption;
+import net.java.truevfs.kernel.spec.FsCompositeDriver;
+import net.java.truevfs.kernel.spec.FsController;
+import net.java.truevfs.kernel.spec.FsDecoratingController;
+import net.java.truevfs.kernel.spec.FsDecoratingManager;
+import net.java.truevfs.kernel.spec.FsManager;
+import net.java.truevfs.kernel.spec.FsMountPoint;
+import net.java.truevfs.kernel.spec.FsNode;
+import net.java.truevfs.kernel.spec.FsNodeName;
+import net.java.truevfs.kernel.spec.FsScheme;
+import net.java.truevfs.kernel.spec.FsSyncException;
+import net.java.truevfs.kernel.spec.FsSyncOption;
+
+/**
+ * A file system manager which records the latencies of the file system
+ * operations in a {@link LatencyHistogram} per file system scheme, i.e. per
+ * file system driver, and {@link Operation}.
+ * <p>
+ * Unlike the TrueVFS Extension Insight, which provides averages, and the
+ * TrueVFS Extension Logging, which logs each operation, this manager only
+ * takes two time stamps and updates a histogram per operation.
+ * Recording doesn't allocate any objects or take any locks, only the
+ * decorators for controllers, sockets and streams get allocated once per
+ * lookup or open, so it's cheap enough to leave on.
+ * Mounting an archive file system is not an operation of its own:
+ * It happens on the first {@link Operation${symbol_pound}NODE} or
+ * {@link Operation${symbol_pound}OPEN_INPUT} of an archive file system, so it shows up
+ * in the tail latencies of these operations.
+ * Likewise, compressing an entry shows up in {@link Operation${symbol_pound}WRITE} and
+ * {@link Operation${symbol_pound}CLOSE_OUTPUT} and writing the archive file shows up in
+ * {@link Operation${symbol_pound}SYNC}.
+ * <p>
+ * This manager gets installed by the {@link LatenciesDecorator} if the system
+ * property {@value ${symbol_pound}LATENCIES_PROPERTY} is set to {@code true}.
+ * The system property needs to be set before the TrueVFS Kernel gets used
+ * first, e.g. on the command line.
+ * The report can be read at any time via JMX, where this manager is
+ * registered as an MXBean with the platform MBean server.
+ */
+public final class Latencies extends FsDecoratingManager
+implements LatenciesMXBean {
+
+    /** The name of the system property for recording the latencies. */
+    public static final String LATENCIES_PROPERTY
+            = "${package}.java.Application.latencies";
+
+    /** The timed file system operations. */
+    public enum Operation {
+        /** Looking up a file system node, e.g. for {@code TFile.exists()}. */
+        NODE,
+        /** Opening an input stream or channel. */
+        OPEN_INPUT,
+        /** Reading from an input stream or channel. */
+        READ,
+        /** Opening an output stream or channel. */
+        OPEN_OUTPUT,
+        /** Writing to an output stream or channel. */
+        WRITE,
+        /** Closing an output stream or channel. */
+        CLOSE_OUTPUT,
+        /** Syncing a file system, e.g. by {@code TVFS.umount()}. */
+        SYNC
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private static volatile Latencies current;
+
+    private final ConcurrentMap<FsScheme, LatencyHistogram[]> histograms
+            = new ConcurrentHashMap<>();
+
+    private Latencies(FsManager manager) { super(manager); }
+
+    /**
+     * Decorates the given file system manager with new latencies and
+     * registers them with the platform MBean server.
+     */
+    public static Latencies decorate(final FsManager manager) {
+        final Latencies decorator = new Latencies(manager);
+        decorator.register();
+        return current = decorator;
+    }
+
+    /**
+     * Returns the latencies which have been installed last or {@code null}
+     * if no latencies have been installed.
+     */
+    public static Latencies current() { return current; }
+
+    /** Returns the histograms for the given scheme, indexed by operation. */
+    private LatencyHistogram[] histograms(final FsScheme scheme) {
+        LatencyHistogram[] array = histograms.get(scheme);
+        if (null == array) {
+            final LatencyHistogram[] created
+                    = new LatencyHistogram[OPERATIONS.length];
+            for (int i = 0; i < created.length; i++)
+                created[i] = new LatencyHistogram();
+            array = histograms.putIfAbsent(scheme, created);
+            if (null == array) array = created;
+        }
+        return array;
+    }
+
+    private LatencyHistogram[] histograms(final FsController controller) {
+        return histograms(controller.getModel().getMountPoint().getScheme());
+    }
+
+    @Override
+    public FsController controller(
+            final FsCompositeDriver driver,
+            final FsMountPoint mountPoint) {
+        final FsController controller = manager.controller(driver, mountPoint);
+        return new TimedController(controller, histograms(controller));
+    }
+
+    @Override
+    public <X extends IOException> void accept(
+            final Filter<? super FsController> filter,
+            final Visitor<? super FsController, X> visitor)
+    throws X {
+        // Time syncing by TVFS.sync() and friends, too.
+        manager.accept(filter, new Visitor<FsController, X>() {
+            @Override
+            public void visit(final FsController controller) throws X {
+                visitor.visit(new TimedController(
+                        controller, histograms(controller)));
+            }
+        });
+    }
+
+    /** Registers these latencies with the platform MBean server. */
+    private void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName(
+                    Latencies.class.getPackage().getName()
+                    + ":type=Latencies");
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException ex) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (InstanceNotFoundException ignored) {
+                }
+                server.registerMBean(this, name);
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /** Returns the histograms sorted by scheme. */
+    private Map<String, LatencyHistogram[]> sorted() {
+        final Map<String, LatencyHistogram[]> sorted = new TreeMap<>();
+        for (final Map.Entry<FsScheme, LatencyHistogram[]> entry
+                : histograms.entrySet())
+            sorted.put(entry.getKey().toString(), entry.getValue());
+        return sorted;
+    }
+
+    @Override
+    public String getReport() {
+        final StringBuilder sb = new StringBuilder(String.format(
+                "%-8s %-12s %10s %10s %10s %10s %10s%n", "scheme",
+                "operation", "count", "p50 us", "p99 us", "p999 us",
+                "max us"));
+        for (final Map.Entry<String, LatencyHistogram[]> entry
+                : sorted().entrySet()) {
+            for (final Operation operation : OPERATIONS) {
+                final LatencyHistogram h = entry.getValue()[operation.ordinal()];
+                if (0 == h.count()) continue;
+                sb.append(String.format(Locale.ENGLISH,
+                        "%-8s %-12s %10d %10.1f %10.1f %10.1f %10.1f%n",
+                        entry.getKey(),
+                        operation.name().toLowerCase(Locale.ENGLISH),
+                        h.count(), h.quantile(0.5) / 1e3,
+                        h.quantile(0.99) / 1e3, h.quantile(0.999) / 1e3,
+                        h.max() / 1e3));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the latencies as a JSON object with the percentiles and the
+     * maximum in nanoseconds.
+     */
+    @Override
+    public String getJson() {
+        final StringBuilder sb = new StringBuilder("{\"latencies\":{");
+        String scheme = "";
+        for (final Map.Entry<String, LatencyHistogram[]> entry
+                : sorted().entrySet()) {
+            String operation = "";
+            for (final Operation op : OPERATIONS) {
+                final LatencyHistogram h = entry.getValue()[op.ordinal()];
+                if (0 == h.count()) continue;
+                if (operation.isEmpty())
+                    sb.append(scheme).append('"').append(entry.getKey())
+                            .append("\":{");
+                sb.append(operation).append(String.format(
+                        "\"%s\":{\"count\":%d,\"p50\":%d,\"p99\":%d,\"p999\":%d,\"max\":%d}",
+                        op.name().toLowerCase(Locale.ENGLISH), h.count(),
+                        h.quantile(0.5), h.quantile(0.99), h.quantile(0.999),
+                        h.max()));
+                operation = ",";
+            }
+            if (!operation.isEmpty()) {
+                sb.append('}');
+                scheme = ",";
+            }
+        }
+        return sb.append("}}").toString();
+    }
+
+    @Override
+    public void reset() {
+        for (final LatencyHistogram[] array : histograms.values())
+            for (final LatencyHistogram h : array) h.reset();
+    }
+
+    @Override
+    public String toString() { return getJson(); }
+
+    /** Times the operations of a file system controller. */
+    private static final class TimedController extends FsDecoratingController {
+        final LatencyHistogram[] histograms;
+
+        TimedController(
+                final FsController controller,
+                final LatencyHistogram[] histograms) {
+            super(controller);
+            this.histograms = histograms;
+        }
+
+        @Override
+        public FsNode node(
+                final BitField<FsAccessOption> options,
+                final FsNodeName name)
+        throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return controller.node(options, name);
+            } finally {
+                histograms[Operation.NODE.ordinal()]
+                        .record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public InputSocket<? extends Entry> input(
+                final BitField<FsAccessOption> options,
+                final FsNodeName name) {
+            return new TimedInputSocket<>(
+                    controller.input(options, name), histograms);
+        }
+
+        @Override
+        public OutputSocket<? extends Entry> output(
+                final BitField<FsAccessOption> options,
+                final FsNodeName name,
+                final Entry template) {
+            return new TimedOutputSocket<>(
+                    controller.output(options, name, template), histograms);
+        }
+
+        @Override
+        public void sync(final BitField<FsSyncOption> options)
+        throws FsSyncException {
+            final long start = System.nanoTime();
+            try {
+                controller.sync(options);
+            } finally {
+                histograms[Operation.SYNC.ordinal()]
+                        .record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static final class TimedInputSocket<E extends Entry>
+    extends DecoratingInputSocket<E> {
+        final LatencyHistogram[] histograms;
+
+        TimedInputSocket(
+                final InputSocket<E> socket,
+                final LatencyHistogram[] histograms) {
+            super(socket);
+            this.histograms = histograms;
+        }
+
+        @Override
+        public InputStream stream(final OutputSocket<? extends Entry> peer)
+        throws IOException {
+            final long start = System.nanoTime();
+            final InputStream in;
+            try {
+                in = socket.stream(peer);
+            } finally {
+                histograms[Operation.OPEN_INPUT.ordinal()]
+                        .record(System.nanoTime() - start);
+            }
+            return new TimedInputStream(in, histograms);
+        }
+
+        @Override
+        public SeekableByteChannel channel(
+                final OutputSocket<? extends Entry> peer)
+        throws IOException {
+            final long start = System.nanoTime();
+            final SeekableByteChannel channel;
+            try {
+                channel = socket.channel(peer);
+            } finally {
+                histograms[Operation.OPEN_INPUT.ordinal()]
+                        .record(System.nanoTime() - start);
+            }
+            return new TimedChannel(channel, histograms, false);
+        }
+    }
+
+    private static final class TimedOutputSocket<E extends Entry>
+    extends DecoratingOutputSocket<E> {
+        final LatencyHistogram[] histograms;
+
+        TimedOutputSocket(
+                final OutputSocket<E> socket,
+                final LatencyHistogram[] histograms) {
+            super(socket);
+            this.histograms = histograms;
+        }
+
+        @Override
+        public OutputStream stream(final InputSocket<? extends Entry> peer)
+        throws IOException {
+            final long start = System.nanoTime();
+            final OutputStream out;
+            try {
+                out = socket.stream(peer);
+            } finally {
+                histograms[Operation.OPEN_OUTPUT.ordinal()]
+                        .record(System.nanoTime() - start);
+            }
+            return new TimedOutputStream(out, histograms);
+        }
+
+        @Override
+        public SeekableByteChannel channel(
+                final InputSocket<? extends Entry> peer)
+        throws IOException {
+            final long start = System.nanoTime();
+            final SeekableByteChannel channel;
+            try {
+                channel = socket.channel(peer);
+            } finally {
+                histograms[Operation.OPEN_OUTPUT.ordinal()]
+                        .record(System.nanoTime() - start);
+            }
+            return new TimedChannel(channel, histograms, true);
+        }
+    }
+
+    private static final class TimedInputStream extends FilterInputStream {
+        final LatencyHistogram read;
+
+        TimedInputStream(
+                final InputStream in,
+                final LatencyHistogram[] histograms) {
+            super(in);
+            this.read = histograms[Operation.READ.ordinal()];
+        }
+
+        @Override
+        public int read() throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return in.read();
+            } finally {
+                read.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return in.read(b, off, len);
+            } finally {
+                read.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static final class TimedOutputStream extends FilterOutputStream {
+        final LatencyHistogram write, close;
+
+        TimedOutputStream(
+                final OutputStream out,
+                final LatencyHistogram[] histograms) {
+            super(out);
+            this.write = histograms[Operation.WRITE.ordinal()];
+            this.close = histograms[Operation.CLOSE_OUTPUT.ordinal()];
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            final long start = System.nanoTime();
+            try {
+                out.write(b);
+            } finally {
+                write.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+        throws IOException {
+            final long start = System.nanoTime();
+            try {
+                out.write(b, off, len);
+            } finally {
+                write.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            final long start = System.nanoTime();
+            try {
+                out.close();
+            } finally {
+                close.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Times reading, writing and closing a channel.
+     * Closing only gets timed for output channels, where it commits the
+     * entry.
+     */
+    private static final class TimedChannel implements SeekableByteChannel {
+        final SeekableByteChannel channel;
+        final LatencyHistogram read, write, close;
+
+        TimedChannel(
+                final SeekableByteChannel channel,
+                final LatencyHistogram[] histograms,
+                final boolean output) {
+            this.channel = channel;
+            this.read = histograms[Operation.READ.ordinal()];
+            this.write = histograms[Operation.WRITE.ordinal()];
+            this.close = output
+                    ? histograms[Operation.CLOSE_OUTPUT.ordinal()]
+                    : null;
+        }
+
+        @Override
+        public int read(final ByteBuffer dst) throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return channel.read(dst);
+            } finally {
+                read.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public int write(final ByteBuffer src) throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return channel.write(src);
+            } finally {
+                write.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public long position() throws IOException { return channel.position(); }
+
+        @Override
+        public SeekableByteChannel position(long newPosition)
+        throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException { return channel.size(); }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen() { return channel.isOpen(); }
+
+        @Override
+        public void close() throws IOException {
+            final long start = System.nanoTime();
+            try {
+                channel.close();
+            } finally {
+                if (null != close) close.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import net.java.truevfs.kernel.spec.FsManager;
+import net.java.truevfs.kernel.spec.spi.FsManagerDecorator;
+
+/**
+ * Decorates the file system manager with {@link Latencies} if the system
+ * property {@value Latencies${symbol_pound}LATENCIES_PROPERTY} is set to {@code true}.
+ * This service gets located by the TrueVFS Kernel via
+ * {@code META-INF/services}.
+ */
+public final class LatenciesDecorator extends FsManagerDecorator {
+
+    @Override
+    public FsManager apply(final FsManager manager) {
+        return Boolean.getBoolean(Latencies.LATENCIES_PROPERTY)
+                ? Latencies.decorate(manager)
+                : manager;
+    }
+}
@@ -0,0 +1,23 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+/**
+ * The JMX interface of the {@link Latencies}.
+ */
+public interface LatenciesMXBean {
+
+    /**
+     * Returns a table with the count and the 50th, 99th and 99.9th
+     * percentile and the maximum of the latencies in microseconds for each
+     * file system scheme and operation.
+     */
+    String getReport();
+
+    /** Returns the latencies as a JSON object. */
+    String getJson();
+
+    /** Clears all histograms. */
+    void reset();
+}
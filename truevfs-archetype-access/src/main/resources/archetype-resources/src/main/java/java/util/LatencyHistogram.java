@@ -0,0 +1,98 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in nanoseconds with a fixed relative precision.
+ * <p>
+ * The buckets are log-linear:
+ * Each power of two gets split into {@value ${symbol_pound}SUB_BUCKETS} buckets of equal
+ * width, so a percentile is accurate within about three percent for any
+ * value from one nanosecond up to {@link Long${symbol_pound}MAX_VALUE}.
+ * All buckets get allocated upfront, so {@link ${symbol_pound}record} doesn't allocate
+ * and it's lock-free:
+ * It costs a few arithmetic instructions and two or three atomic updates.
+ * <p>
+ * This class is thread-safe.
+ * Reading the percentiles while other threads are recording is supported,
+ * but the result is not an atomic snapshot.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+
+    /** The number of buckets per power of two. */
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int bucket(final long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS
+                + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /** Returns the largest value which falls into the given bucket. */
+    private static long highest(final int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /** Records the given latency in nanoseconds. */
+    public void record(long nanos) {
+        if (0 > nanos) nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        count.incrementAndGet();
+        for (long m; nanos > (m = max.get()); )
+            if (max.compareAndSet(m, nanos)) break;
+    }
+
+    /** Returns the number of recorded latencies. */
+    public long count() { return count.get(); }
+
+    /** Returns the maximum recorded latency in nanoseconds. */
+    public long max() { return max.get(); }
+
+    /**
+     * Returns the given quantile of the recorded latencies in nanoseconds,
+     * which is the upper bound of its bucket, but not more than the maximum.
+     *
+     * @param quantile the quantile between zero and one, e.g. 0.99 for the
+     *        99th percentile.
+     */
+    public long quantile(final double quantile) {
+        if (0 > quantile || 1 < quantile)
+            throw new IllegalArgumentException(quantile + " (quantile must be between zero and one)");
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+        if (0 == total) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highest(i), max());
+        }
+        return max();
+    }
+
+    /**
+     * Clears this histogram.
+     * Latencies which get recorded concurrently may get lost.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,208 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Queue;
+
+/**
+ * The listing of the directory tree of an archive file in a compact binary
+ * format which can get read directly from a (memory mapped) byte buffer.
+ * <p>
+ * The listing starts with the number of nodes, followed by a fixed size
+ * record for each node, followed by the UTF-8 encoded names of all nodes.
+ * Each record holds the offset and length of the name, the index of the
+ * first child and the number of children, the size and the last
+ * modification time of the node.
+ * The nodes are numbered in breadth first order, so the children of each
+ * directory are adjacent and sorted by name.
+ * Node zero is the archive file itself.
+ * The number of children of a file is -1.
+ * <p>
+ * Instances of this class are immutable and may get used by multiple
+ * threads.
+ */
+public final class Listing {
+
+    /** The index of the root node. */
+    public static final int ROOT = 0;
+
+    private static final int RECORD = 32;
+
+    private static final Comparator<File> BY_NAME = new Comparator<File>() {
+        @Override
+        public int compare(File o1, File o2) {
+            return o1.getName().compareTo(o2.getName());
+        }
+    };
+
+    private final ByteBuffer buffer;
+    private final int nodes, names;
+
+    /**
+     * Reads a listing from the remaining bytes of the given buffer.
+     * All records get validated, so that the accessor methods cannot fail
+     * for a node index in the range from zero to {@link ${symbol_pound}nodes} and walking
+     * the children terminates.
+     *
+     * @throws IllegalArgumentException if the listing is corrupt.
+     */
+    public Listing(final ByteBuffer buffer) {
+        this.buffer = buffer.slice();
+        final int limit = this.buffer.limit();
+        if (4 > limit)
+            throw new IllegalArgumentException(limit + " (listing too short)");
+        this.nodes = this.buffer.getInt(0);
+        if (0 >= nodes || (limit - 4) / RECORD < nodes)
+            throw new IllegalArgumentException(nodes + " (invalid number of nodes)");
+        this.names = 4 + nodes * RECORD;
+        validate();
+    }
+
+    /**
+     * Checks that the name of each node is within the buffer and that the
+     * children of each directory are the next adjacent nodes in breadth
+     * first order, like {@link ${symbol_pound}build} writes them.
+     */
+    private void validate() {
+        final long length = buffer.limit() - names;
+        int next = 1;
+        for (int node = 0; node < nodes; node++) {
+            final int record = record(node);
+            final int offset = buffer.getInt(record);
+            final int size = buffer.getInt(record + 4);
+            if (0 > offset || 0 > size || length < (long) offset + size)
+                throw new IllegalArgumentException(node + " (invalid name of node)");
+            final int children = buffer.getInt(record + 12);
+            if (0 > children) {
+                if (-1 != children)
+                    throw new IllegalArgumentException(node + " (invalid number of children)");
+                continue;
+            }
+            if (next != buffer.getInt(record + 8) || nodes - next < children)
+                throw new IllegalArgumentException(node + " (invalid children)");
+            next += children;
+        }
+        if (nodes != next)
+            throw new IllegalArgumentException(next + " (invalid number of nodes)");
+    }
+
+    /**
+     * Lists the directory tree of the given file by walking it in breadth
+     * first order.
+     * If the file is an archive file, then it gets mounted.
+     *
+     * @throws IOException if listing any directory fails.
+     */
+    public static Listing build(final File root) throws IOException {
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        final ByteArrayOutputStream names = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(records);
+        final Queue<File> queue = new ArrayDeque<>();
+        queue.add(root);
+        int nodes = 0, next = 1;
+        for (File file; null != (file = queue.poll()); nodes++) {
+            final byte[] name = ROOT == nodes
+                    ? new byte[0]
+                    : file.getName().getBytes(StandardCharsets.UTF_8);
+            int children = -1;
+            if (file.isDirectory()) {
+                final File[] members = file.listFiles();
+                if (null == members)
+                    throw new IOException(file + " (cannot list directory)");
+                Arrays.sort(members, BY_NAME);
+                queue.addAll(Arrays.asList(members));
+                children = members.length;
+            }
+            out.writeInt(names.size());
+            out.writeInt(name.length);
+            out.writeInt(0 <= children ? next : 0);
+            out.writeInt(children);
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            names.write(name);
+            if (0 < children) next += children;
+        }
+        final ByteBuffer buffer
+                = ByteBuffer.allocate(4 + records.size() + names.size());
+        buffer  .putInt(nodes)
+                .put(records.toByteArray())
+                .put(names.toByteArray())
+                .flip();
+        return new Listing(buffer);
+    }
+
+    /** Returns a read-only view of the binary representation. */
+    public ByteBuffer buffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /** Returns the number of nodes. */
+    public int nodes() { return nodes; }
+
+    /** Returns the name of the given node. */
+    public String name(final int node) {
+        final int offset = names + buffer.getInt(record(node));
+        final byte[] name = new byte[buffer.getInt(record(node) + 4)];
+        for (int i = 0; i < name.length; i++)
+            name[i] = buffer.get(offset + i);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /** Returns {@code true} if and only if the given node is a directory. */
+    public boolean isDirectory(final int node) {
+        return 0 <= children(node);
+    }
+
+    /** Returns the number of children of the given directory or -1. */
+    public int children(final int node) {
+        return buffer.getInt(record(node) + 12);
+    }
+
+    /** Returns the index of the i-th child of the given directory. */
+    public int child(final int node, final int i) {
+        return buffer.getInt(record(node) + 8) + i;
+    }
+
+    /** Returns the size of the given node in bytes. */
+    public long size(final int node) {
+        return buffer.getLong(record(node) + 16);
+    }
+
+    /** Returns the last modification time of the given node. */
+    public long lastModified(final int node) {
+        return buffer.getLong(record(node) + 24);
+    }
+
+    /**
+     * Returns the index of the child of the given directory with the given
+     * name or -1 if there is no such child.
+     */
+    public int find(final int node, final String name) {
+        int low = 0, high = children(node) - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int child = child(node, mid);
+            final int cmp = name(child).compareTo(name);
+            if (0 > cmp) low = mid + 1;
+            else if (0 < cmp) high = mid - 1;
+            else return child;
+        }
+        return -1;
+    }
+
+    private int record(final int node) {
+        if (0 > node || node >= nodes)
+            throw new IndexOutOfBoundsException(node + " (no such node)");
+        return 4 + node * RECORD;
+    }
+}
@@ -0,0 +1,69 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the member lists of recently browsed directories, bounded by
+ * the total number of members.
+ * When adding a listing exceeds the budget, the least recently used listings
+ * get evicted until the budget is met again.
+ * A listing which exceeds the budget on its own doesn't get cached at all.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class ListingCache {
+
+    private final long budget;
+    private final LinkedHashMap<File, File[]> listings
+            = new LinkedHashMap<>(16, 0.75f, true);
+    private long members;
+    private long hits, misses, evictions;
+
+    /**
+     * Constructs a new listing cache.
+     *
+     * @param budget the maximum total number of members of all listings.
+     */
+    public ListingCache(final long budget) {
+        if (0 > budget)
+            throw new IllegalArgumentException(budget + " (budget must not be negative)");
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the members of the given directory or {@code null} if they are
+     * not cached.
+     */
+    public synchronized File[] get(final File directory) {
+        final File[] listing = listings.get(directory);
+        if (null != listing) hits++;
+        else misses++;
+        return listing;
+    }
+
+    /** Caches the members of the given directory. */
+    public synchronized void put(final File directory, final File[] listing) {
+        final File[] old = listings.remove(directory);
+        if (null != old) members -= old.length;
+        if (budget < listing.length) return;
+        listings.put(directory, listing);
+        members += listing.length;
+        for (   final Iterator<File[]> it = listings.values().iterator();
+                budget < members; evictions++) {
+            members -= it.next().length;
+            it.remove();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d listings, %d members, %d hits, %d misses, %d evictions",
+                listings.size(), members, hits, misses, evictions);
+    }
+}
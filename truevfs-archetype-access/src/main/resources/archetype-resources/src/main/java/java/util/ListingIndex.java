@@ -0,0 +1,253 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A persistent index of the {@link Listing}s of top level archive files,
+ * keyed by their path, size and last modification time.
+ * <p>
+ * The index file gets read into the heap in one go when opening the index,
+ * so looking up a listing costs a hash map lookup and a {@code stat} of the
+ * archive file.
+ * It doesn't get memory mapped because then it could not get replaced on
+ * Windows.
+ * A listing is only valid while the size and the last modification time of
+ * the archive file are the same as when it got built.
+ * Listings which get {@link ${symbol_pound}put} while the index is open are kept on the
+ * heap until the index gets {@link ${symbol_pound}save}d.
+ * <p>
+ * The index file starts with a magic number, a version number and the
+ * number of archive files.
+ * Then, for each archive file, the UTF-8 encoded absolute path, the size,
+ * the last modification time and the offset and length of its listing
+ * follow.
+ * The listings follow at the end.
+ * If the index file is missing, has a different format or is corrupt, then
+ * the index starts empty.
+ * This includes the records of each listing, which get validated when
+ * opening the index, so a corrupt index file cannot fail a walk later.
+ * The index file cannot exceed 2 GB.
+ * <p>
+ * This class is thread-safe.
+ */
+public final class ListingIndex {
+
+    private static final int MAGIC = 0x54564958; // "TVIX"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final Map<String, Slot> loaded;
+    private final Map<String, Slot> fresh = new ConcurrentHashMap<>();
+
+    private ListingIndex(final File file, final Map<String, Slot> loaded) {
+        this.file = file;
+        this.loaded = loaded;
+    }
+
+    /**
+     * Opens the index in the given file.
+     *
+     * @throws IOException if the index file exists but cannot get read.
+     */
+    public static ListingIndex open(final File file) throws IOException {
+        final Map<String, Slot> loaded = new HashMap<>();
+        if (file.isFile()) {
+            final ByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(
+                    file.toPath(), StandardOpenOption.READ)) {
+                final long size = channel.size();
+                if (Integer.MAX_VALUE < size)
+                    throw new IOException(file + " (index file too large)");
+                buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining())
+                    if (0 > channel.read(buffer)) break;
+                buffer.flip();
+            }
+            try {
+                if (MAGIC == buffer.getInt() && VERSION == buffer.getInt()) {
+                    for (int i = buffer.getInt(); 0 < i; i--) {
+                        final byte[] path = new byte[check(buffer.getInt(),
+                                buffer.remaining())];
+                        buffer.get(path);
+                        final long size = buffer.getLong();
+                        final long time = buffer.getLong();
+                        final int offset = check(buffer.getInt(),
+                                buffer.limit());
+                        final int length = check(buffer.getInt(),
+                                buffer.limit() - offset);
+                        final ByteBuffer slice = buffer.duplicate();
+                        slice.position(offset).limit(offset + length);
+                        loaded.put(new String(path, StandardCharsets.UTF_8),
+                                new Slot(size, time, new Listing(slice)));
+                    }
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException
+                    | IndexOutOfBoundsException ex) {
+                // Corrupt index file, start over.
+                loaded.clear();
+            }
+        }
+        return new ListingIndex(file, loaded);
+    }
+
+    /**
+     * Returns the listing of the given top level archive file if it's still
+     * valid or {@code null} otherwise.
+     */
+    public Listing get(final File archive) {
+        final String path = archive.getAbsolutePath();
+        Slot slot = fresh.get(path);
+        if (null == slot) slot = loaded.get(path);
+        return null != slot && slot.isValid(archive) ? slot.listing : null;
+    }
+
+    /**
+     * Returns the listing of the given top level archive file.
+     * If the index has no valid listing, then a new listing gets built from
+     * the given view of the archive file and put into the index.
+     * In this case, the archive file gets mounted.
+     *
+     * @param archive the archive file on the platform file system.
+     * @param view the archive file as a virtual directory, typically a
+     *        {@link net.java.truevfs.access.TFile}.
+     * @throws IOException if building the listing fails.
+     */
+    public Listing get(final File archive, final File view)
+    throws IOException {
+        Listing listing = get(archive);
+        if (null == listing) {
+            // Stat before building so that a concurrent update of the
+            // archive file invalidates the new listing.
+            final BasicFileAttributes attributes = attributes(archive);
+            listing = Listing.build(view);
+            if (null != attributes)
+                fresh.put(archive.getAbsolutePath(), new Slot(
+                        attributes.size(),
+                        attributes.lastModifiedTime().toMillis(),
+                        listing));
+        }
+        return listing;
+    }
+
+    /**
+     * Writes the index file if any listings have been built since opening
+     * it.
+     * Listings of archive files which don't exist anymore or have changed
+     * get dropped.
+     * The new index file replaces the old one atomically, so concurrent
+     * readers see either of them.
+     */
+    public void save() throws IOException {
+        if (fresh.isEmpty()) return;
+        final Map<String, Slot> slots = new LinkedHashMap<>();
+        for (final Map.Entry<String, Slot> entry : loaded.entrySet())
+            if (entry.getValue().isValid(new File(entry.getKey())))
+                slots.put(entry.getKey(), entry.getValue());
+        slots.putAll(fresh);
+
+        final List<byte[]> paths = new ArrayList<>(slots.size());
+        long offset = 12;
+        for (final String path : slots.keySet()) {
+            final byte[] encoded = path.getBytes(StandardCharsets.UTF_8);
+            paths.add(encoded);
+            offset += 4 + encoded.length + 8 + 8 + 4 + 4;
+        }
+        final File dir = file.getAbsoluteFile().getParentFile();
+        final File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(slots.size());
+                int i = 0;
+                for (final Slot slot : slots.values()) {
+                    final int length = slot.listing.buffer().remaining();
+                    if (Integer.MAX_VALUE < offset + length)
+                        throw new IOException(file + " (index file too large)");
+                    out.writeInt(paths.get(i).length);
+                    out.write(paths.get(i++));
+                    out.writeLong(slot.size);
+                    out.writeLong(slot.time);
+                    out.writeInt((int) offset);
+                    out.writeInt(length);
+                    offset += length;
+                }
+                final byte[] buf = new byte[64 * 1024];
+                for (final Slot slot : slots.values()) {
+                    final ByteBuffer listing = slot.listing.buffer();
+                    while (listing.hasRemaining()) {
+                        final int n = Math.min(buf.length, listing.remaining());
+                        listing.get(buf, 0, n);
+                        out.write(buf, 0, n);
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Returns the given length or offset if it's not negative and not greater
+     * than the given maximum.
+     *
+     * @throws IllegalArgumentException if the index file is corrupt.
+     */
+    private static int check(final int value, final int max) {
+        if (0 > value || max < value)
+            throw new IllegalArgumentException(value + " (corrupt index file)");
+        return value;
+    }
+
+    private static BasicFileAttributes attributes(final File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static final class Slot {
+        final long size, time;
+        final Listing listing;
+
+        Slot(final long size, final long time, final Listing listing) {
+            this.size = size;
+            this.time = time;
+            this.listing = listing;
+        }
+
+        boolean isValid(final File archive) {
+            final BasicFileAttributes attributes = attributes(archive);
+            return null != attributes
+                    && attributes.isRegularFile()
+                    && size == attributes.size()
+                    && time == attributes.lastModifiedTime().toMillis();
+        }
+    }
+}
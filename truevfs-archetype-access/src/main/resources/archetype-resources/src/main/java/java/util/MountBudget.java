@@ -0,0 +1,431 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import net.java.truecommons.shed.Filter;
+import net.java.truecommons.shed.Visitor;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.kernel.spec.FsCompositeDriver;
+import net.java.truevfs.kernel.spec.FsController;
+import net.java.truevfs.kernel.spec.FsDecoratingManager;
+import net.java.truevfs.kernel.spec.FsManager;
+import net.java.truevfs.kernel.spec.FsMountPoint;
+import net.java.truevfs.kernel.spec.FsSyncException;
+import net.java.truevfs.kernel.spec.FsSyncOptions;
+
+/**
+ * A file system manager which keeps the estimated heap footprint of the
+ * mounted archive file systems within a budget.
+ * <p>
+ * Unlike the TrueVFS Extension Pacemaker, which limits the number of mounted
+ * archive file systems, this manager estimates the heap which each mounted
+ * archive file system holds from the number of its entries and the length of
+ * their names:
+ * Each entry costs about {@value ${symbol_pound}ENTRY_BYTES} bytes for the entry objects of
+ * the archive driver and the file system node plus {@value ${symbol_pound}CHAR_BYTES}
+ * bytes per character of its name, which gets stored twice.
+ * The estimate gets computed once after an archive file system got mounted.
+ * <p>
+ * Whenever a file system controller gets looked up, its archive file system
+ * and all its parent archive file systems become the most recently used.
+ * That's all a lookup does, so it takes constant time.
+ * Every {@value ${symbol_pound}CHECK_MILLIS} milliseconds after any lookup, a daemon thread
+ * estimates the footprint of any new archive file systems and compares the
+ * footprint with the budget.
+ * If it's exceeded, then the least recently used archive file systems get
+ * synced and unmounted, together with any nested archive file systems, until
+ * the footprint is within the budget again.
+ * The archive file system which has been looked up last and its parents
+ * don't get evicted.
+ * Archive file systems with open streams are skipped.
+ * Because the daemon thread does the estimating and the syncing, no lookup
+ * waits for it, but an eviction may wait for the locks of its archive file
+ * systems.
+ * <p>
+ * This manager gets installed by the {@link MountBudgetDecorator} if the
+ * system property {@value ${symbol_pound}BUDGET_PROPERTY} is set to the budget in bytes,
+ * optionally followed by {@code k}, {@code m} or {@code g}.
+ * The system property needs to be set before the TrueVFS Kernel gets used
+ * first, e.g. on the command line.
+ * The metrics get registered as a JMX MXBean with the platform MBean server.
+ */
+public final class MountBudget extends FsDecoratingManager
+implements MountBudgetMXBean {
+
+    /** The name of the system property for the budget. */
+    public static final String BUDGET_PROPERTY
+            = "${package}.java.Application.mountBudget";
+
+    /** The estimated heap footprint of an entry without its name in bytes. */
+    public static final int ENTRY_BYTES = 320;
+
+    /** The estimated heap footprint per character of an entry name in bytes. */
+    public static final int CHAR_BYTES = 4;
+
+    /** The time between two checks of the footprint. */
+    public static final int CHECK_MILLIS = 50;
+
+    private static final int MAX_EVICTED = 1 << 16;
+
+    private static volatile MountBudget current;
+
+    private final long budget;
+
+    /** The archive file systems in LRU order, guarded by itself. */
+    private final Map<FsMountPoint, Mount> lru
+            = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The recently evicted archive file systems, guarded by {@link ${symbol_pound}lru}. */
+    private final Map<FsMountPoint, Boolean> evicted
+            = new LinkedHashMap<FsMountPoint, Boolean>() {
+        private static final long serialVersionUID = 0L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FsMountPoint, Boolean> e) {
+            return MAX_EVICTED < size();
+        }
+    };
+
+    private final ScheduledExecutorService checker
+            = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "MountBudget");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    private final ThreadLocal<Boolean> quiet = new ThreadLocal<>();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong remounts = new AtomicLong();
+    private volatile FsMountPoint recent;
+    private volatile boolean touched;
+    private volatile long footprint;
+    private volatile int mounted;
+
+    private MountBudget(final FsManager manager, final long budget) {
+        super(manager);
+        if (0 >= budget)
+            throw new IllegalArgumentException(budget + " (budget must be positive)");
+        this.budget = budget;
+    }
+
+    /**
+     * Decorates the given file system manager with a new mount budget and
+     * registers it with the platform MBean server.
+     *
+     * @param  manager the file system manager to decorate.
+     * @param  budget the budget in bytes.
+     * @return the new mount budget.
+     */
+    public static MountBudget decorate(
+            final FsManager manager,
+            final long budget) {
+        final MountBudget decorator = new MountBudget(manager, budget);
+        decorator.register();
+        decorator.start();
+        return current = decorator;
+    }
+
+    /**
+     * Returns the mount budget which has been installed last or
+     * {@code null} if no mount budget has been installed.
+     */
+    public static MountBudget current() { return current; }
+
+    /**
+     * Parses the given size in bytes, optionally followed by {@code k},
+     * {@code m} or {@code g} for kibibytes, mebibytes or gibibytes.
+     */
+    public static long parseSize(final String value) {
+        final String v = value.trim().toLowerCase(Locale.ENGLISH);
+        final int shift;
+        switch (v.isEmpty() ? ' ' : v.charAt(v.length() - 1)) {
+            case 'k': shift = 10; break;
+            case 'm': shift = 20; break;
+            case 'g': shift = 30; break;
+            default: shift = 0;
+        }
+        try {
+            return Long.parseLong(0 == shift ? v : v.substring(0, v.length() - 1))
+                    << shift;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(value + " (not a size)", ex);
+        }
+    }
+
+    @Override
+    public FsController controller(
+            final FsCompositeDriver driver,
+            final FsMountPoint mountPoint) {
+        final FsController controller = manager.controller(driver, mountPoint);
+        if (null == quiet.get()) {
+            for (FsMountPoint mp = mountPoint; null != mp.getParent(); mp = mp.getParent())
+                touch(mp);
+            recent = mountPoint;
+            touched = true;
+        }
+        return controller;
+    }
+
+    /** Starts checking the footprint on the daemon thread. */
+    private void start() {
+        checker.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                // Check again without a lookup only while over budget.
+                if (!touched && footprint <= budget) return;
+                touched = false;
+                try {
+                    check(recent);
+                } catch (RuntimeException ex) {
+                    // Keep checking.
+                    System.err.println("Cannot check the mount budget: " + ex);
+                }
+            }
+        }, CHECK_MILLIS, CHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void touch(final FsMountPoint mountPoint) {
+        synchronized (lru) {
+            if (null == lru.get(mountPoint)) {
+                lru.put(mountPoint, new Mount());
+                if (null != evicted.remove(mountPoint))
+                    remounts.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Compares the footprint with the budget and evicts the least recently
+     * used archive file systems except for the given mount point and its
+     * parents.
+     * This runs on the daemon thread only.
+     */
+    private void check(final FsMountPoint current) {
+        quiet.set(Boolean.TRUE);
+        try {
+            final Map<FsMountPoint, FsController> controllers = mounted();
+            final List<Map.Entry<FsMountPoint, Mount>> order;
+            synchronized (lru) {
+                lru.keySet().retainAll(controllers.keySet());
+                for (final FsMountPoint mountPoint : controllers.keySet())
+                    if (!lru.containsKey(mountPoint))
+                        lru.put(mountPoint, new Mount());
+                order = new ArrayList<>(lru.entrySet());
+            }
+            long footprint = 0;
+            for (final Map.Entry<FsMountPoint, Mount> entry : order) {
+                final Mount mount = entry.getValue();
+                if (0 > mount.estimate) mount.estimate = estimate(entry.getKey());
+                footprint += mount.estimate;
+            }
+            for (final Map.Entry<FsMountPoint, Mount> entry : order) {
+                if (footprint <= budget) break;
+                final FsMountPoint mountPoint = entry.getKey();
+                if (controllers.containsKey(mountPoint)
+                        && (null == current
+                            || !isParentOrSelf(mountPoint, current)))
+                    footprint -= evict(mountPoint, controllers);
+            }
+            this.footprint = footprint;
+            this.mounted = controllers.size();
+        } finally {
+            quiet.remove();
+        }
+    }
+
+    /** Returns the controllers of the mounted archive file systems. */
+    private Map<FsMountPoint, FsController> mounted() {
+        final Map<FsMountPoint, FsController> controllers = new LinkedHashMap<>();
+        try {
+            manager.accept(
+                    new Filter<FsController>() {
+                        @Override
+                        public boolean accept(final FsController controller) {
+                            return null != controller.getParent()
+                                    && controller.getModel().isMounted();
+                        }
+                    },
+                    new Visitor<FsController, IOException>() {
+                        @Override
+                        public void visit(final FsController controller) {
+                            controllers.put(
+                                    controller.getModel().getMountPoint(),
+                                    controller);
+                        }
+                    });
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+        return controllers;
+    }
+
+    /**
+     * Syncs and unmounts the archive file system with the given mount point
+     * and any nested archive file systems and returns the estimated heap
+     * which got released.
+     * The given map gets updated accordingly.
+     */
+    private long evict(
+            final FsMountPoint mountPoint,
+            final Map<FsMountPoint, FsController> controllers) {
+        final Set<FsMountPoint> victims = new HashSet<>();
+        for (final FsMountPoint mp : controllers.keySet())
+            if (isParentOrSelf(mountPoint, mp)) victims.add(mp);
+        final List<FsMountPoint> released = new ArrayList<>();
+        try {
+            // The manager visits nested archive file systems first.
+            manager.accept(
+                    new Filter<FsController>() {
+                        @Override
+                        public boolean accept(final FsController controller) {
+                            return victims.contains(
+                                    controller.getModel().getMountPoint());
+                        }
+                    },
+                    new Visitor<FsController, IOException>() {
+                        @Override
+                        public void visit(final FsController controller) {
+                            try {
+                                controller.sync(FsSyncOptions.NONE);
+                                released.add(controller.getModel().getMountPoint());
+                            } catch (FsSyncException ex) {
+                                // Most likely there are open streams, so
+                                // leave it mounted.
+                            }
+                        }
+                    });
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+        long bytes = 0;
+        synchronized (lru) {
+            for (final FsMountPoint mp : released) {
+                final Mount mount = lru.remove(mp);
+                if (null != mount) bytes += mount.estimate;
+                evicted.put(mp, Boolean.TRUE);
+                controllers.remove(mp);
+            }
+        }
+        evictions.addAndGet(released.size());
+        return bytes;
+    }
+
+    private static boolean isParentOrSelf(
+            final FsMountPoint parent,
+            FsMountPoint mountPoint) {
+        for (; null != mountPoint; mountPoint = mountPoint.getParent())
+            if (parent.equals(mountPoint)) return true;
+        return false;
+    }
+
+    /**
+     * Estimates the heap footprint of the given mounted archive file system.
+     */
+    private static long estimate(final FsMountPoint mountPoint) {
+        final long[] counts = new long[2];
+        count(new TFile(new File(mountPoint.toHierarchicalUri())), 0, counts);
+        return counts[0] * ENTRY_BYTES + counts[1] * CHAR_BYTES;
+    }
+
+    /**
+     * Adds the number of entries and the number of characters of their names
+     * in the given archive file or directory to the given counts, excluding
+     * any nested archive files.
+     */
+    private static void count(
+            final TFile directory,
+            final int prefix,
+            final long[] counts) {
+        final TFile[] members = directory.listFiles();
+        if (null == members) return;
+        for (final TFile member : members) {
+            final int length = prefix + member.getName().length();
+            counts[0]++;
+            counts[1] += length;
+            if (!member.isArchive() && member.isDirectory())
+                count(member, length + 1, counts);
+        }
+    }
+
+    /** Registers this mount budget with the platform MBean server. */
+    private void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName(
+                    MountBudget.class.getPackage().getName()
+                    + ":type=MountBudget");
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException ex) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (InstanceNotFoundException ignored) {
+                }
+                server.registerMBean(this, name);
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public long getBudget() { return budget; }
+
+    @Override
+    public long getFootprint() { return footprint; }
+
+    @Override
+    public int getMounted() { return mounted; }
+
+    @Override
+    public long getEvictions() { return evictions.get(); }
+
+    @Override
+    public long getRemounts() { return remounts.get(); }
+
+    @Override
+    public double getRemountRate() {
+        final long evictions = getEvictions();
+        return 0 == evictions ? 0 : (double) getRemounts() / evictions;
+    }
+
+    @Override
+    public String getJson() {
+        return String.format(Locale.ENGLISH,
+                "{\"budget\":%d,\"footprint\":%d,\"mounted\":%d,"
+                + "\"evictions\":%d,\"remounts\":%d,\"remountRate\":%.3f}",
+                getBudget(), getFootprint(), getMounted(), getEvictions(),
+                getRemounts(), getRemountRate());
+    }
+
+    @Override
+    public String toString() { return getJson(); }
+
+    private static final class Mount {
+        /** The estimated heap footprint or -1 if unknown yet. */
+        long estimate = -1;
+    }
+}
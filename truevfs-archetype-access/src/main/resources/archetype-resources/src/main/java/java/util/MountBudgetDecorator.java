@@ -0,0 +1,24 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import net.java.truevfs.kernel.spec.FsManager;
+import net.java.truevfs.kernel.spec.spi.FsManagerDecorator;
+
+/**
+ * Decorates the file system manager with a {@link MountBudget} if the system
+ * property {@value MountBudget${symbol_pound}BUDGET_PROPERTY} is set.
+ * This service gets located by the TrueVFS Kernel via
+ * {@code META-INF/services}.
+ */
+public final class MountBudgetDecorator extends FsManagerDecorator {
+
+    @Override
+    public FsManager apply(final FsManager manager) {
+        final String budget = System.getProperty(MountBudget.BUDGET_PROPERTY);
+        return null == budget
+                ? manager
+                : MountBudget.decorate(manager, MountBudget.parseSize(budget));
+    }
+}
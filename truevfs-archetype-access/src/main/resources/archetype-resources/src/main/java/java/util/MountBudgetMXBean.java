@@ -0,0 +1,41 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+/**
+ * The JMX interface of the {@link MountBudget}.
+ */
+public interface MountBudgetMXBean {
+
+    /** Returns the heap budget for the mounted archive file systems in bytes. */
+    long getBudget();
+
+    /**
+     * Returns the estimated heap footprint of the mounted archive file
+     * systems in bytes.
+     */
+    long getFootprint();
+
+    /** Returns the number of mounted archive file systems. */
+    int getMounted();
+
+    /** Returns the number of archive file systems which got unmounted. */
+    long getEvictions();
+
+    /**
+     * Returns the number of archive file systems which got accessed again
+     * after they had been unmounted.
+     */
+    long getRemounts();
+
+    /**
+     * Returns the ratio of the remounts to the evictions.
+     * A value close to one means that the budget is too small for the
+     * working set of archive files.
+     */
+    double getRemountRate();
+
+    /** Returns the metrics as a JSON object. */
+    String getJson();
+}
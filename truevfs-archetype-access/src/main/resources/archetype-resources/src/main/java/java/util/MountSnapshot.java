@@ -0,0 +1,180 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import net.java.truecommons.shed.Filter;
+import net.java.truecommons.shed.Visitor;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.kernel.spec.FsController;
+import net.java.truevfs.kernel.spec.FsMountPoint;
+import net.java.truevfs.kernel.spec.sl.FsManagerLocator;
+
+/**
+ * A snapshot of the archive file systems which are currently mounted by the
+ * TrueVFS Kernel.
+ * <p>
+ * When taking the snapshot, the entries of each mounted archive file system
+ * get counted and the size, last modification time and file key of each top
+ * level archive file get recorded.
+ * Nested archive files which are not mounted don't get mounted for this.
+ * After the archive file systems have been synced, {@link ${symbol_pound}written} compares
+ * the recorded state with the current state of the top level archive files
+ * in order to find out which of them have been created or updated.
+ */
+public final class MountSnapshot {
+
+    private final int archives;
+    private final Map<File, TopLevel> topLevels = new LinkedHashMap<>();
+
+    private MountSnapshot(final List<FsMountPoint> mountPoints) {
+        this.archives = mountPoints.size();
+        for (final FsMountPoint mountPoint : mountPoints) {
+            final TFile archive
+                    = new TFile(new File(mountPoint.toHierarchicalUri()));
+            final File file = new File(archive.getTopLevelArchive().getPath());
+            TopLevel topLevel = topLevels.get(file);
+            if (null == topLevel)
+                topLevels.put(file, topLevel = new TopLevel(state(file)));
+            topLevel.entries += count(archive);
+        }
+    }
+
+    /** Takes a snapshot of the currently mounted archive file systems. */
+    public static MountSnapshot take() {
+        final List<FsMountPoint> mountPoints = new ArrayList<>();
+        try {
+            FsManagerLocator.SINGLETON.get().accept(
+                    new Filter<FsController>() {
+                        @Override
+                        public boolean accept(final FsController controller) {
+                            return null != controller.getParent()
+                                    && controller.getModel().isMounted();
+                        }
+                    },
+                    new Visitor<FsController, IOException>() {
+                        @Override
+                        public void visit(final FsController controller) {
+                            mountPoints.add(
+                                    controller.getModel().getMountPoint());
+                        }
+                    });
+        } catch (IOException ex) {
+            throw new AssertionError(ex);
+        }
+        return new MountSnapshot(mountPoints);
+    }
+
+    /** Returns the number of mounted archive file systems. */
+    public int archives() { return archives; }
+
+    /**
+     * Compares this snapshot with the current state of the top level archive
+     * files.
+     */
+    public Written written() {
+        long archives = 0, bytes = 0, entries = 0;
+        for (final Map.Entry<File, TopLevel> entry : topLevels.entrySet()) {
+            final State now = state(entry.getKey());
+            final TopLevel topLevel = entry.getValue();
+            if (null != now && !now.equals(topLevel.state)) {
+                archives++;
+                bytes += now.size;
+                entries += topLevel.entries;
+            }
+        }
+        return new Written(archives, bytes, entries);
+    }
+
+    /**
+     * Counts the entries in the given archive file or directory, excluding
+     * the entries in any nested archive files.
+     * These get counted separately if they are mounted.
+     */
+    private static long count(final TFile directory) {
+        final TFile[] members = directory.listFiles();
+        if (null == members) return 0;
+        long entries = members.length;
+        for (final TFile member : members)
+            if (!member.isArchive() && member.isDirectory())
+                entries += count(member);
+        return entries;
+    }
+
+    private static State state(final File file) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(
+                    file.toPath(), BasicFileAttributes.class);
+            return new State(attributes.size(),
+                    attributes.lastModifiedTime().toMillis(),
+                    attributes.fileKey());
+        } catch (IOException ex) {
+            // The archive file doesn't exist (yet).
+            return null;
+        }
+    }
+
+    /** The changes of the top level archive files since the snapshot. */
+    public static final class Written {
+        private final long archives, bytes, entries;
+
+        Written(final long archives, final long bytes, final long entries) {
+            this.archives = archives;
+            this.bytes = bytes;
+            this.entries = entries;
+        }
+
+        /**
+         * Returns the number of top level archive files which got created or
+         * updated.
+         */
+        public long archives() { return archives; }
+
+        /** Returns the total size of these archive files. */
+        public long bytes() { return bytes; }
+
+        /** Returns the number of entries in these archive files. */
+        public long entries() { return entries; }
+    }
+
+    private static final class TopLevel {
+        final State state;
+        long entries;
+
+        TopLevel(final State state) { this.state = state; }
+    }
+
+    private static final class State {
+        final long size, time;
+        final Object key;
+
+        State(final long size, final long time, final Object key) {
+            this.size = size;
+            this.time = time;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof State)) return false;
+            final State that = (State) other;
+            return this.size == that.size
+                    && this.time == that.time
+                    && Objects.equals(this.key, that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(size, time, key);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parses the leading options of the command line arguments of a sample
+ * application.
+ * An option is an argument of the form {@code --name} or
+ * {@code --name=value}.
+ * Parsing stops at the first argument which doesn't start with {@code --}
+ * or after the argument {@code --}.
+ * All remaining arguments are the operands.
+ */
+public final class Options {
+
+    private final Map<String, String> options = new HashMap<>();
+    private final String[] operands;
+
+    public Options(final String... args) {
+        int i = 0;
+        for (; i < args.length; i++) {
+            final String arg = args[i];
+            if (!arg.startsWith("--")) break;
+            if (2 == arg.length()) {
+                i++;
+                break;
+            }
+            final int eq = arg.indexOf('=');
+            if (0 > eq) options.put(arg.substring(2), null);
+            else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        this.operands = Arrays.copyOfRange(args, i, args.length);
+    }
+
+    /** Returns {@code true} if and only if the named option is present. */
+    public boolean has(String name) { return options.containsKey(name); }
+
+    /**
+     * Returns the value of the named option or the given default value if the
+     * option is absent or has no value.
+     */
+    public String get(String name, String defaultValue) {
+        final String value = options.get(name);
+        return null != value ? value : defaultValue;
+    }
+
+    /**
+     * Returns the value of the named option as an {@code int} or the given
+     * default value if the option is absent or has no value.
+     *
+     * @throws IllegalArgumentException if the value is not a number.
+     */
+    public int getInt(String name, int defaultValue) {
+        return (int) getLong(name, defaultValue);
+    }
+
+    /**
+     * Returns the value of the named option as a {@code long} or the given
+     * default value if the option is absent or has no value.
+     *
+     * @throws IllegalArgumentException if the value is not a number.
+     */
+    public long getLong(final String name, final long defaultValue) {
+        final String value = options.get(name);
+        if (null == value) return defaultValue;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(
+                    "--" + name + "=" + value + " (not a number)", ex);
+        }
+    }
+
+    /** Returns a copy of the arguments which follow the options. */
+    public String[] operands() { return operands.clone(); }
+}
@@ -0,0 +1,539 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a new ZIP file with many entries, compressing the entries in
+ * parallel.
+ * <p>
+ * Each call to {@link ${symbol_pound}write} submits a job to a pool of worker threads
+ * which computes the CRC-32 and deflates the contents of the entry into a
+ * heap buffer.
+ * The calling thread appends the finished entries to the output stream in
+ * the order of the calls to {@code write}, so the resulting ZIP file is the
+ * same as with a sequential implementation.
+ * If more than the given number of entries are pending, then {@code write}
+ * waits for the oldest one, so the heap usage is bounded.
+ * Entries which would not get smaller get stored instead of deflated.
+ * <p>
+ * Large entries should get written by {@link ${symbol_pound}stream} instead, which deflates
+ * the contents of an input stream on the calling thread in chunks, so they
+ * never get buffered as a whole.
+ * Their CRC-32 and sizes get written in a data descriptor after the data.
+ * Alternatively, {@link ${symbol_pound}copy} writes an entry whose data has already been
+ * compressed, e.g. an entry of another ZIP file, without recompressing it.
+ * <p>
+ * When appending to an existing ZIP file, {@link ${symbol_pound}keep} adds an existing
+ * entry to the new central directory without writing it again.
+ * <p>
+ * The entry names get encoded in UTF-8.
+ * If the ZIP file has more than 65534 entries or grows beyond 4 GB, then the
+ * ZIP64 extensions get used.
+ * This class doesn't check for duplicate entry names.
+ * This class is not thread-safe.
+ */
+public final class ParallelZipWriter implements Closeable {
+
+    private static final int LFH_SIG = 0x04034b50;
+    private static final int CFH_SIG = 0x02014b50;
+    private static final int ZIP64_EOCDR_SIG = 0x06064b50;
+    private static final int ZIP64_EOCDL_SIG = 0x07064b50;
+    private static final int EOCDR_SIG = 0x06054b50;
+    private static final int DD_SIG = 0x08074b50;
+    private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long UINT32_MAX = 0xffffffffL;
+    private static final int UINT16_MAX = 0xffff;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final Le out;
+    private final Le central = new Le(new ByteArrayOutputStream());
+    private final ExecutorService executor;
+    private final Queue<Future<Entry>> pending = new ArrayDeque<>();
+    private final int maxPending, level;
+    private final ThreadLocal<Deflater> deflaters;
+    private final Queue<Deflater> allDeflaters = new ConcurrentLinkedQueue<>();
+    private final Calendar calendar = new GregorianCalendar();
+    private long entries, bytesIn;
+    private boolean closed;
+
+    /**
+     * Constructs a new parallel ZIP writer.
+     *
+     * @param out the output stream for the ZIP file.
+     * @param threads the number of worker threads.
+     * @param maxPending the maximum number of entries which are waiting to
+     *        get compressed or written.
+     * @param level the compression level for the {@link Deflater}.
+     */
+    public ParallelZipWriter(
+            final OutputStream out,
+            final int threads,
+            final int maxPending,
+            final int level) {
+        this(out, 0, threads, maxPending, level);
+    }
+
+    /**
+     * Constructs a new parallel ZIP writer which appends to an existing ZIP
+     * file.
+     *
+     * @param out the output stream for appending to the ZIP file.
+     * @param position the length of the ZIP file, i.e. the offset of the
+     *        first byte written to the output stream.
+     * @param threads the number of worker threads.
+     * @param maxPending the maximum number of entries which are waiting to
+     *        get compressed or written.
+     * @param level the compression level for the {@link Deflater}.
+     */
+    public ParallelZipWriter(
+            final OutputStream out,
+            final long position,
+            final int threads,
+            final int maxPending,
+            final int level) {
+        if (0 > position)
+            throw new IllegalArgumentException(position + " (position must not be negative)");
+        this.out = new Le(Objects.requireNonNull(out));
+        this.out.position = position;
+        if (0 >= maxPending)
+            throw new IllegalArgumentException(maxPending + " (maximum number of pending entries must be positive)");
+        this.maxPending = maxPending;
+        this.level = level;
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.deflaters = new ThreadLocal<Deflater>() {
+            @Override
+            protected Deflater initialValue() {
+                final Deflater deflater = new Deflater(level, true);
+                allDeflaters.add(deflater);
+                return deflater;
+            }
+        };
+    }
+
+    /**
+     * Schedules writing an entry with the given name, contents and last
+     * modification time.
+     * The contents must not get modified until this writer gets closed.
+     */
+    public void write(
+            final String name,
+            final byte[] contents,
+            final long time)
+    throws IOException {
+        if (closed) throw new IOException("Writer closed.");
+        final byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        if (UINT16_MAX < encoded.length)
+            throw new IOException(name + " (entry name too long)");
+        final long dosTime = dosTime(calendar, time);
+        pending.add(executor.submit(new Callable<Entry>() {
+            @Override
+            public Entry call() {
+                return compress(encoded, contents, dosTime);
+            }
+        }));
+        while (maxPending < pending.size()) writeNext();
+    }
+
+    /**
+     * Writes an entry with the given name, last modification time and the
+     * contents of the given input stream, deflating them on the calling
+     * thread in chunks.
+     * The input stream doesn't get closed.
+     * Any pending entries get written first.
+     * Entries of 4 GB or more are not supported.
+     */
+    public void stream(
+            final String name,
+            final InputStream in,
+            final long time)
+    throws IOException {
+        if (closed) throw new IOException("Writer closed.");
+        final byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        if (UINT16_MAX < encoded.length)
+            throw new IOException(name + " (entry name too long)");
+        while (!pending.isEmpty()) writeNext();
+        final long offset = out.position;
+        final long dosTime = dosTime(calendar, time);
+        final int flags = UTF8_FLAG | DATA_DESCRIPTOR_FLAG;
+        local(new Entry(encoded, dosTime, 0, 0, 0, DEFLATED, null), flags);
+        final long start = out.position;
+        final CRC32 crc = new CRC32();
+        final Deflater deflater = new Deflater(level, true);
+        long size = 0;
+        try {
+            final byte[] buf = new byte[CHUNK_SIZE];
+            final byte[] chunk = new byte[CHUNK_SIZE];
+            for (int n; 0 <= (n = in.read(buf)); ) {
+                crc.update(buf, 0, n);
+                size += n;
+                deflater.setInput(buf, 0, n);
+                while (!deflater.needsInput()) deflate(deflater, chunk);
+            }
+            deflater.finish();
+            while (!deflater.finished()) deflate(deflater, chunk);
+        } finally {
+            deflater.end();
+        }
+        final long csize = out.position - start;
+        if (UINT32_MAX <= size || UINT32_MAX <= csize)
+            throw new IOException(name + " (entry too large to stream)");
+        final Entry entry = new Entry(encoded, dosTime, crc.getValue(), size,
+                csize, DEFLATED, null);
+        out.int32(DD_SIG).int32(entry.crc).int32(csize).int32(size);
+        central(entry, offset, flags);
+        bytesIn += size;
+    }
+
+    private void deflate(final Deflater deflater, final byte[] chunk)
+    throws IOException {
+        out.bytes(chunk, 0, deflater.deflate(chunk));
+    }
+
+    /**
+     * Writes an entry with the given name, last modification time, CRC-32,
+     * uncompressed size and compression method, copying its compressed data
+     * from the given region of the given channel without recompressing it.
+     * Any pending entries get written first.
+     * Entries of 4 GB or more are not supported.
+     */
+    public void copy(
+            final String name,
+            final long time,
+            final long crc,
+            final long size,
+            final int method,
+            final FileChannel channel,
+            final long position,
+            final long length)
+    throws IOException {
+        if (closed) throw new IOException("Writer closed.");
+        final byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        if (UINT16_MAX < encoded.length)
+            throw new IOException(name + " (entry name too long)");
+        if (UINT32_MAX <= size || UINT32_MAX <= length)
+            throw new IOException(name + " (entry too large to copy)");
+        while (!pending.isEmpty()) writeNext();
+        header(new Entry(encoded, dosTime(calendar, time), crc, size, length,
+                method, null));
+        final WritableByteChannel target = Channels.newChannel(out.out);
+        for (long done = 0; done < length; ) {
+            final long n = channel.transferTo(position + done, length - done, target);
+            if (0 >= n && channel.size() <= position + done)
+                throw new IOException(name + " (truncated entry data)");
+            done += n;
+        }
+        out.position += length;
+        bytesIn += size;
+    }
+
+    /**
+     * Adds the given entry of the ZIP file which gets appended to to the new
+     * central directory, with the given last modification time.
+     * The entry data stays where it is, so nothing gets written until the
+     * central directory.
+     * Any pending entries get added first.
+     * Entries of 4 GB or more are not supported.
+     */
+    public void keep(final ZipDirectory.Entry entry, final long time)
+    throws IOException {
+        if (closed) throw new IOException("Writer closed.");
+        // Encode the name like it's been decoded, so it doesn't change.
+        final byte[] encoded = entry.name().getBytes(
+                0 != (entry.flags() & UTF8_FLAG)
+                    ? StandardCharsets.UTF_8
+                    : StandardCharsets.ISO_8859_1);
+        if (UINT32_MAX <= entry.size()
+                || UINT32_MAX <= entry.compressedSize())
+            throw new IOException(entry.name() + " (entry too large to keep)");
+        while (!pending.isEmpty()) writeNext();
+        central(new Entry(encoded, dosTime(calendar, time), entry.crc(),
+                entry.size(), entry.compressedSize(), entry.method(), null),
+                entry.offset(), entry.flags());
+    }
+
+    /** Returns the number of entries written so far. */
+    public long entries() { return entries; }
+
+    /** Returns the uncompressed size of the entries written so far. */
+    public long bytesIn() { return bytesIn; }
+
+    /** Returns the size of the ZIP file written so far. */
+    public long bytesOut() { return out.position; }
+
+    /**
+     * Writes all pending entries and the central directory and closes the
+     * output stream.
+     * The native memory of the deflaters of the worker threads gets released
+     * when they have terminated.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            while (!pending.isEmpty()) writeNext();
+            writeCentralDirectory();
+        } finally {
+            executor.shutdownNow();
+            try {
+                out.out.close();
+            } finally {
+                end();
+            }
+        }
+    }
+
+    /**
+     * Waits for the worker threads to terminate and ends their deflaters.
+     * If the calling thread gets interrupted, then the deflaters are left to
+     * the garbage collector.
+     */
+    private void end() {
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        for (Deflater deflater; null != (deflater = allDeflaters.poll()); )
+            deflater.end();
+    }
+
+    private Entry compress(
+            final byte[] name,
+            final byte[] contents,
+            final long dosTime) {
+        final CRC32 crc = new CRC32();
+        crc.update(contents);
+        final Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(contents);
+        deflater.finish();
+        final ByteArrayOutputStream buf
+                = new ByteArrayOutputStream(contents.length / 2 + 64);
+        final byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            final int n = deflater.deflate(chunk);
+            buf.write(chunk, 0, n);
+            if (buf.size() >= contents.length) break;
+        }
+        final boolean deflated = deflater.finished()
+                && buf.size() < contents.length;
+        final byte[] data = deflated ? buf.toByteArray() : contents;
+        return new Entry(name, dosTime, crc.getValue(), contents.length,
+                data.length, deflated ? DEFLATED : STORED, data);
+    }
+
+    private void writeNext() throws IOException {
+        final Entry entry;
+        try {
+            entry = pending.remove().get();
+        } catch (InterruptedException ex) {
+            throw (IOException) new InterruptedIOException().initCause(ex);
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause());
+        }
+        header(entry);
+        out.bytes(entry.data);
+        bytesIn += entry.size;
+    }
+
+    /**
+     * Writes the local file header of the given entry and adds its central
+     * file header.
+     */
+    private void header(final Entry entry) throws IOException {
+        final long offset = out.position;
+        local(entry, UTF8_FLAG);
+        central(entry, offset, UTF8_FLAG);
+    }
+
+    private void local(final Entry entry, final int flags) throws IOException {
+        out     .int32(LFH_SIG)
+                .int16(20)
+                .int16(flags)
+                .int16(entry.method)
+                .int32(entry.dosTime)
+                .int32(entry.crc)
+                .int32(entry.csize)
+                .int32(entry.size)
+                .int16(entry.name.length)
+                .int16(0)
+                .bytes(entry.name);
+    }
+
+    /**
+     * Adds the central file header of the given entry with the given offset
+     * of its local file header.
+     */
+    private void central(
+            final Entry entry,
+            final long offset,
+            final int flags)
+    throws IOException {
+        final boolean zip64 = UINT32_MAX <= offset;
+        central .int32(CFH_SIG)
+                .int16(zip64 ? 45 : 20)
+                .int16(zip64 ? 45 : 20)
+                .int16(flags)
+                .int16(entry.method)
+                .int32(entry.dosTime)
+                .int32(entry.crc)
+                .int32(entry.csize)
+                .int32(entry.size)
+                .int16(entry.name.length)
+                .int16(zip64 ? 12 : 0)
+                .int16(0)
+                .int16(0)
+                .int16(0)
+                .int32(0)
+                .int32(zip64 ? UINT32_MAX : offset)
+                .bytes(entry.name);
+        if (zip64) central.int16(1).int16(8).int64(offset);
+        entries++;
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        final long offset = out.position;
+        ((ByteArrayOutputStream) central.out).writeTo(out.out);
+        out.position += central.position;
+        final long size = central.position;
+        if (UINT16_MAX <= entries || UINT32_MAX <= offset || UINT32_MAX <= size) {
+            final long zip64 = out.position;
+            out .int32(ZIP64_EOCDR_SIG)
+                .int64(44)
+                .int16(45)
+                .int16(45)
+                .int32(0)
+                .int32(0)
+                .int64(entries)
+                .int64(entries)
+                .int64(size)
+                .int64(offset)
+                .int32(ZIP64_EOCDL_SIG)
+                .int32(0)
+                .int64(zip64)
+                .int32(1);
+        }
+        out     .int32(EOCDR_SIG)
+                .int16(0)
+                .int16(0)
+                .int16((int) Math.min(UINT16_MAX, entries))
+                .int16((int) Math.min(UINT16_MAX, entries))
+                .int32(Math.min(UINT32_MAX, size))
+                .int32(Math.min(UINT32_MAX, offset))
+                .int16(0);
+        out.out.flush();
+    }
+
+    /**
+     * Returns the given time in milliseconds since the epoch as an MS-DOS
+     * date and time.
+     */
+    static long dosTime(final Calendar calendar, final long time) {
+        calendar.setTimeInMillis(time);
+        final int year = calendar.get(Calendar.YEAR);
+        if (1980 > year) return (1 << 21) | (1 << 16);
+        return (long) (year - 1980) << 25
+                | (calendar.get(Calendar.MONTH) + 1) << 21
+                | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11
+                | calendar.get(Calendar.MINUTE) << 5
+                | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    private static final class Entry {
+        final byte[] name;
+        final long dosTime, crc, size, csize;
+        final int method;
+        final byte[] data;
+
+        Entry(  final byte[] name,
+                final long dosTime,
+                final long crc,
+                final long size,
+                final long csize,
+                final int method,
+                final byte[] data) {
+            this.name = name;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.size = size;
+            this.csize = csize;
+            this.method = method;
+            this.data = data;
+        }
+    }
+
+    /** Writes little endian integers and counts the bytes written. */
+    private static final class Le {
+        final OutputStream out;
+        final byte[] buf = new byte[8];
+        long position;
+
+        Le(final OutputStream out) { this.out = out; }
+
+        Le int16(final int value) throws IOException {
+            buf[0] = (byte) value;
+            buf[1] = (byte) (value >> 8);
+            out.write(buf, 0, 2);
+            position += 2;
+            return this;
+        }
+
+        Le int32(final long value) throws IOException {
+            for (int i = 0; i < 4; i++) buf[i] = (byte) (value >> 8 * i);
+            out.write(buf, 0, 4);
+            position += 4;
+            return this;
+        }
+
+        Le int64(final long value) throws IOException {
+            for (int i = 0; i < 8; i++) buf[i] = (byte) (value >> 8 * i);
+            out.write(buf, 0, 8);
+            position += 8;
+            return this;
+        }
+
+        Le bytes(final byte[] bytes) throws IOException {
+            return bytes(bytes, 0, bytes.length);
+        }
+
+        Le bytes(final byte[] bytes, final int off, final int len)
+        throws IOException {
+            out.write(bytes, off, len);
+            position += len;
+            return this;
+        }
+    }
+}
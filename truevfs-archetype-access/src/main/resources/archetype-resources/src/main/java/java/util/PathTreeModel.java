@@ -0,0 +1,46 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A tree model for the Path API.
+ * Use it with a {@link net.java.truevfs.access.TPath} in order to browse
+ * archive files, too.
+ */
+public final class PathTreeModel implements TreeModel<Path> {
+
+    @Override
+    public boolean exists(Path node) { return Files.exists(node); }
+
+    @Override
+    public String name(Path node) {
+        return String.valueOf(node.getFileName());
+    }
+
+    @Override
+    public boolean isDirectory(Path node) { return Files.isDirectory(node); }
+
+    @Override
+    public List<Path> children(final Path directory) throws IOException {
+        final List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path member : stream) entries.add(member);
+        }
+        Collections.sort(entries);
+        return entries;
+    }
+
+    @Override
+    public DirectoryStream<Path> stream(Path directory) throws IOException {
+        return Files.newDirectoryStream(directory);
+    }
+}
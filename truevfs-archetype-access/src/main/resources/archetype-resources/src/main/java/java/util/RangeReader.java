@@ -0,0 +1,282 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import net.java.truevfs.access.TFile;
+import net.java.truevfs.access.TFileInputStream;
+
+/**
+ * Reads byte ranges of files and archive entries without extracting them.
+ * <p>
+ * If a file is an entry in a ZIP file which is not nested in another archive
+ * file, then the central directory of the ZIP file gets read with a
+ * {@link ZipDirectory} and the entry data gets read directly from the ZIP
+ * file, bypassing the TrueVFS Kernel:
+ * For a STORED entry, the range gets read with positional reads, so the
+ * latency doesn't depend on the offset.
+ * For a DEFLATED entry, the data gets inflated and discarded up to the
+ * offset, so the latency grows with the offset, but the memory usage is
+ * constant.
+ * Plain files get read with positional reads, too.
+ * Any other file, e.g. an entry in a nested archive file or in a TAR file,
+ * gets read from a {@link TFileInputStream} and discarded up to the offset.
+ * <p>
+ * Because the ZIP file gets read directly, changes to the ZIP file which have
+ * not yet been committed by the TrueVFS Kernel are not visible.
+ * This is not an issue for a command line utility which only reads.
+ */
+public final class RangeReader {
+
+    /** The strategy for accessing a range. */
+    public enum Access {
+        /** Positional reads from a plain file. */
+        SEEK,
+        /** Inflating and discarding up to the offset. */
+        INFLATE,
+        /** Reading and discarding an input stream up to the offset. */
+        STREAM
+    }
+
+    private final int bufferSize;
+
+    /**
+     * Constructs a new range reader.
+     *
+     * @param bufferSize the size of the buffer for reading and discarding.
+     */
+    public RangeReader(final int bufferSize) {
+        if (0 >= bufferSize)
+            throw new IllegalArgumentException(bufferSize + " (buffer size must be positive)");
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Opens the given file or archive entry for reading byte ranges.
+     * This only reads the metadata, so it's fast for any size of the entry.
+     */
+    public Input open(final File file) throws IOException {
+        final TFile tfile = file instanceof TFile
+                ? (TFile) file
+                : new TFile(file);
+        final TFile archive = tfile.getInnerArchive();
+        if (null == archive) {
+            final FileChannel channel
+                    = new RandomAccessFile(file, "r").getChannel();
+            return new Input(file, Access.SEEK, channel, 0, channel.size(),
+                    channel.size());
+        }
+        if (tfile.isEntry() && null == archive.getEnclArchive()
+                && archive.getFile().isFile()) {
+            final Input input = openZipEntry(tfile, archive.getFile(),
+                    tfile.getInnerEntryName());
+            if (null != input) return input;
+        }
+        return new Input(file, Access.STREAM, null, 0, -1, file.length());
+    }
+
+    /**
+     * Returns an input for the named entry in the given ZIP file or
+     * {@code null} if the file is not a ZIP file or the entry can't get
+     * read directly.
+     */
+    private Input openZipEntry(
+            final File file,
+            final File zip,
+            final String name)
+    throws IOException {
+        final FileChannel channel = new RandomAccessFile(zip, "r").getChannel();
+        Input input = null;
+        try {
+            final ZipDirectory directory;
+            try {
+                directory = ZipDirectory.read(channel);
+            } catch (IOException ex) {
+                // Not a ZIP file, so let the TrueVFS Kernel deal with it.
+                return null;
+            }
+            for (final ZipDirectory.Entry entry : directory.entries()) {
+                if (!name.equals(entry.name())) continue;
+                if (entry.isEncrypted()) return null;
+                final Access access;
+                if (ZipDirectory.STORED == entry.method()) {
+                    if (entry.size() != entry.compressedSize()) return null;
+                    access = Access.SEEK;
+                } else if (ZipDirectory.DEFLATED == entry.method()) {
+                    access = Access.INFLATE;
+                } else {
+                    return null;
+                }
+                return input = new Input(file, access, channel,
+                        entry.dataOffset(channel), entry.compressedSize(),
+                        entry.size());
+            }
+            return null;
+        } finally {
+            if (null == input) channel.close();
+        }
+    }
+
+    /** A file or archive entry which is open for reading byte ranges. */
+    public final class Input implements Closeable {
+        private final File file;
+        private final Access access;
+        private final FileChannel channel;
+        private final long position, length, size;
+        private long discarded;
+
+        Input(  final File file,
+                final Access access,
+                final FileChannel channel,
+                final long position,
+                final long length,
+                final long size) {
+            this.file = file;
+            this.access = access;
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+            this.size = size;
+        }
+
+        /** Returns the strategy for accessing ranges. */
+        public Access access() { return access; }
+
+        /** Returns the size of the file or the uncompressed entry. */
+        public long size() { return size; }
+
+        /**
+         * Returns the number of bytes which have been read and discarded in
+         * order to get to the offset of a range.
+         */
+        public long discarded() { return discarded; }
+
+        /**
+         * Copies the given range to the given output stream.
+         * The range gets truncated to the size of the file.
+         *
+         * @param  offset the offset of the first byte to copy.
+         * @param  count the maximum number of bytes to copy.
+         * @return the number of bytes copied.
+         */
+        public long copy(long offset, long count, final OutputStream out)
+        throws IOException {
+            if (0 > offset)
+                throw new IllegalArgumentException(offset + " (offset must not be negative)");
+            if (0 > count)
+                throw new IllegalArgumentException(count + " (count must not be negative)");
+            offset = Math.min(offset, size);
+            count = Math.min(count, size - offset);
+            final byte[] buf = new byte[bufferSize];
+            if (Access.SEEK == access) {
+                final ByteBuffer bb = ByteBuffer.wrap(buf);
+                for (long done = 0; done < count; ) {
+                    bb.clear().limit((int) Math.min(buf.length, count - done));
+                    final int n = channel.read(bb, position + offset + done);
+                    if (0 > n) throw new EOFException(file + " (truncated)");
+                    out.write(buf, 0, n);
+                    done += n;
+                }
+                return count;
+            }
+            try (InputStream in = Access.INFLATE == access
+                    ? inflate()
+                    : new TFileInputStream(file)) {
+                for (long skip = offset; 0 < skip; ) {
+                    final int n = in.read(buf, 0, (int) Math.min(buf.length, skip));
+                    if (0 > n) throw new EOFException(file + " (truncated)");
+                    skip -= n;
+                    discarded += n;
+                }
+                for (long done = 0; done < count; ) {
+                    final int n = in.read(buf, 0, (int) Math.min(buf.length, count - done));
+                    if (0 > n) throw new EOFException(file + " (truncated)");
+                    out.write(buf, 0, n);
+                    done += n;
+                }
+            }
+            return count;
+        }
+
+        private InputStream inflate() {
+            final Inflater inflater = new Inflater(true);
+            return new InflaterInputStream(
+                    new ChannelInputStream(channel, position, length),
+                    inflater, bufferSize) {
+                boolean eof;
+
+                @Override
+                protected void fill() throws IOException {
+                    if (eof) throw new EOFException(file + " (truncated)");
+                    len = in.read(buf, 0, buf.length);
+                    if (0 > len) {
+                        // The inflater may need a dummy byte at the end of
+                        // the input, just like in java.util.zip.ZipFile.
+                        buf[0] = 0;
+                        len = 1;
+                        eof = true;
+                    }
+                    inf.setInput(buf, 0, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (null != channel) channel.close();
+        }
+    }
+
+    /** Reads a region of a file channel with positional reads. */
+    private static final class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position, remaining;
+
+        ChannelInputStream(
+                final FileChannel channel,
+                final long position,
+                final long length) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return 0 < read(b, 0, 1) ? b[0] & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+            if (0 >= remaining) return -1;
+            final int n = channel.read(ByteBuffer.wrap(b, off,
+                    (int) Math.min(len, remaining)), position);
+            if (0 > n) return -1;
+            position += n;
+            remaining -= n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the wall time and the heap allocations of the calling thread
+ * since the construction of this object.
+ * Measuring the allocations requires a HotSpot based JVM.
+ */
+public final class Stopwatch {
+
+    private final long thread = Thread.currentThread().getId();
+    private final long startBytes = allocatedBytes(thread);
+    private final long startNanos = System.nanoTime();
+
+    /** Returns the elapsed wall time in nanoseconds. */
+    public long elapsedNanos() { return System.nanoTime() - startNanos; }
+
+    /**
+     * Returns the number of bytes allocated by the thread which constructed
+     * this object or -1 if this is not supported by the JVM.
+     */
+    public long allocatedBytes() {
+        final long bytes = allocatedBytes(thread);
+        return 0 <= bytes && 0 <= startBytes ? bytes - startBytes : -1;
+    }
+
+    private static long allocatedBytes(final long thread) {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sun
+                    = (com.sun.management.ThreadMXBean) bean;
+            if (sun.isThreadAllocatedMemorySupported()
+                    && sun.isThreadAllocatedMemoryEnabled())
+                return sun.getThreadAllocatedBytes(thread);
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d ms, %d bytes allocated",
+                elapsedNanos() / 1000000, allocatedBytes());
+    }
+}
@@ -0,0 +1,137 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Records the wall time of the work and sync phases of an application, the
+ * number of archive files written by the sync phase and their total size and
+ * number of entries.
+ * The size and the number of entries are those of the whole archive files,
+ * not just of the changes, because TrueVFS rewrites an archive file
+ * completely when syncing it.
+ * This doesn't require the TrueVFS Extension Insight: The numbers get
+ * computed from a {@link MountSnapshot} which gets taken before the sync
+ * phase and the state of the top level archive files afterwards.
+ * <p>
+ * The statistics can get exported as a JSON object or via JMX.
+ * The values are updated at once at the end of each run, so they are
+ * consistent when read from another thread.
+ */
+public final class SyncStatistics implements SyncStatisticsMXBean {
+
+    private final String application;
+    private volatile Values values = new Values(0, 0, 0, 0, 0, 0);
+
+    /**
+     * Constructs new sync statistics.
+     *
+     * @param application the class name of the application.
+     */
+    public SyncStatistics(final String application) {
+        this.application = application;
+    }
+
+    /**
+     * Records the given wall times and the effects of the sync phase.
+     *
+     * @param workNanos the wall time of the work phase in nanoseconds.
+     * @param syncNanos the wall time of the sync phase in nanoseconds.
+     * @param before the mount snapshot which got taken before the sync phase.
+     */
+    public void record(
+            final long workNanos,
+            final long syncNanos,
+            final MountSnapshot before) {
+        final MountSnapshot.Written written = before.written();
+        values = new Values(workNanos, syncNanos, before.archives(),
+                written.archives(), written.bytes(), written.entries());
+    }
+
+    /**
+     * Registers these statistics with the platform MBean server.
+     * A previously registered MBean for the same application gets replaced.
+     */
+    public void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName name = new ObjectName(
+                    SyncStatistics.class.getPackage().getName()
+                    + ":type=SyncStatistics,name=" + application);
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException ex) {
+                try {
+                    server.unregisterMBean(name);
+                } catch (InstanceNotFoundException ignored) {
+                }
+                server.registerMBean(this, name);
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    public String getApplication() { return application; }
+
+    @Override
+    public long getWorkNanos() { return values.workNanos; }
+
+    @Override
+    public long getSyncNanos() { return values.syncNanos; }
+
+    @Override
+    public long getArchivesSynced() { return values.archivesSynced; }
+
+    @Override
+    public long getArchivesWritten() { return values.archivesWritten; }
+
+    @Override
+    public long getArchiveBytes() { return values.archiveBytes; }
+
+    @Override
+    public long getArchiveEntries() { return values.archiveEntries; }
+
+    @Override
+    public String getJson() {
+        final Values v = values;
+        return String.format(Locale.ENGLISH,
+                "{\"application\":\"%s\",\"workNanos\":%d,\"syncNanos\":%d,"
+                + "\"archivesSynced\":%d,\"archivesWritten\":%d,"
+                + "\"archiveBytes\":%d,\"archiveEntries\":%d}",
+                application, v.workNanos, v.syncNanos, v.archivesSynced,
+                v.archivesWritten, v.archiveBytes, v.archiveEntries);
+    }
+
+    @Override
+    public String toString() { return getJson(); }
+
+    private static final class Values {
+        final long workNanos, syncNanos;
+        final long archivesSynced, archivesWritten;
+        final long archiveBytes, archiveEntries;
+
+        Values( final long workNanos,
+                final long syncNanos,
+                final long archivesSynced,
+                final long archivesWritten,
+                final long archiveBytes,
+                final long archiveEntries) {
+            this.workNanos = workNanos;
+            this.syncNanos = syncNanos;
+            this.archivesSynced = archivesSynced;
+            this.archivesWritten = archivesWritten;
+            this.archiveBytes = archiveBytes;
+            this.archiveEntries = archiveEntries;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+/**
+ * The JMX interface of the {@link SyncStatistics} of the last run of an
+ * application.
+ */
+public interface SyncStatisticsMXBean {
+
+    /** Returns the class name of the application. */
+    String getApplication();
+
+    /** Returns the wall time of the work phase in nanoseconds. */
+    long getWorkNanos();
+
+    /** Returns the wall time of the sync phase in nanoseconds. */
+    long getSyncNanos();
+
+    /** Returns the number of archive file systems which got synced. */
+    long getArchivesSynced();
+
+    /**
+     * Returns the number of top level archive files which got created or
+     * updated.
+     */
+    long getArchivesWritten();
+
+    /**
+     * Returns the total size of the top level archive files written.
+     * This is the size of the whole archive files, not just of the changes.
+     */
+    long getArchiveBytes();
+
+    /**
+     * Returns the number of entries in the top level archive files written,
+     * excluding the entries in any nested archive files.
+     * This includes the entries which didn't change.
+     */
+    long getArchiveEntries();
+
+    /** Returns the statistics as a JSON object. */
+    String getJson();
+}
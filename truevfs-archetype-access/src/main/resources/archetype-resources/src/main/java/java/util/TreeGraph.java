@@ -0,0 +1,67 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.util.Objects;
+
+/**
+ * Prints the tree graph of a directory structure like the {@code Tree}
+ * samples do, using the calling thread only.
+ * <p>
+ * In sorted mode, the members of each directory get collected and sorted
+ * before they get printed.
+ * In unsorted mode, the members get printed in the order which the
+ * directory stream yields them, so nothing gets collected at all.
+ * The tree gets walked iteratively, so deeply nested directories and
+ * archive files don't overflow the thread stack.
+ *
+ * @param  <N> the type of the nodes.
+ */
+public final class TreeGraph<N> {
+
+    private final TreeModel<N> model;
+    private final boolean sorted;
+
+    /**
+     * Constructs a new tree graph.
+     *
+     * @param model the tree model.
+     * @param sorted whether or not to print the members of each directory in
+     *        sorted order.
+     */
+    public TreeGraph(final TreeModel<N> model, final boolean sorted) {
+        this.model = Objects.requireNonNull(model);
+        this.sorted = sorted;
+    }
+
+    /**
+     * Prints the tree graph of the given file or directory to the given
+     * tree printer.
+     * The tree gets walked by a {@link TreeWalker}, so this works for any
+     * depth of the tree.
+     *
+     * @throws IOException if listing any directory fails.
+     */
+    public void graph(final N root, final TreePrinter printer)
+    throws IOException {
+        int level = 0;
+        try (TreeWalker<N>.Walk walk = new TreeWalker<>(model, sorted).walk(root)) {
+            while (walk.hasNext()) {
+                final TreeWalker.Visit<N> visit = walk.next();
+                for (; level > visit.depth(); level--) printer.up();
+                if (level < visit.depth()) {
+                    printer.down();
+                    level++;
+                }
+                printer.print(model.name(visit.node()), visit.isLast());
+            }
+        } catch (DirectoryIteratorException ex) {
+            throw ex.getCause();
+        } finally {
+            for (; 0 < level; level--) printer.up();
+        }
+    }
+}
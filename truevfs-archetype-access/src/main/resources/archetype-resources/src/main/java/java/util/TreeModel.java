@@ -0,0 +1,47 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.util.List;
+
+/**
+ * Abstracts the access to the nodes of a directory tree so that the same
+ * walking and rendering code can be used with the File* API and the Path API.
+ * Implementations must be safe for use by multiple threads.
+ *
+ * @param  <N> the type of the nodes.
+ */
+public interface TreeModel<N> {
+
+    /** Returns {@code true} if and only if the given node exists. */
+    boolean exists(N node);
+
+    /** Returns the name of the given node for printing. */
+    String name(N node);
+
+    /**
+     * Returns {@code true} if and only if the given node is a directory.
+     * If the node is an archive file, then calling this method may mount it.
+     */
+    boolean isDirectory(N node);
+
+    /**
+     * Returns the members of the given directory in sorted order.
+     *
+     * @throws IOException if the directory cannot get listed.
+     */
+    List<N> children(N directory) throws IOException;
+
+    /**
+     * Opens a stream of the members of the given directory in no particular
+     * order.
+     * This avoids collecting and sorting the members if the order doesn't
+     * matter.
+     *
+     * @throws IOException if the directory cannot get listed.
+     */
+    DirectoryStream<N> stream(N directory) throws IOException;
+}
@@ -0,0 +1,104 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Renders the lines of a tree graph to a writer.
+ * Instead of creating a new padding string for each level of the tree, this
+ * class keeps the padding in a reusable character array which grows and
+ * shrinks like a stack while the tree gets walked.
+ * So rendering a node allocates nothing but the node name.
+ * <p>
+ * Call {@link ${symbol_pound}print} for each node, {@link ${symbol_pound}down} before printing
+ * the members of the last printed node and {@link ${symbol_pound}up} after printing them.
+ * The output is buffered, so don't forget to call {@link ${symbol_pound}flush}.
+ * This class is not thread-safe.
+ */
+public final class TreePrinter implements Flushable {
+
+    /** The default size of the output buffer. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] DEFAULT_PREFIX  = "|-- ".toCharArray();
+    private static final char[] LAST_PREFIX     = "`-- ".toCharArray();
+    private static final char[] DEFAULT_PADDING = "|   ".toCharArray();
+    private static final char[] LAST_PADDING    = "    ".toCharArray();
+    private static final int SEGMENT = 4;
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final Writer out;
+    private char[] padding = new char[16 * SEGMENT];
+    private int level;
+    private boolean last;
+    private long lines;
+
+    /**
+     * Constructs a new tree printer which writes to the given output stream
+     * using the default character set and a buffer of {@link ${symbol_pound}BUFFER_SIZE}
+     * characters.
+     * Note that {@link ${symbol_pound}flush} doesn't close the output stream.
+     */
+    public TreePrinter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out), BUFFER_SIZE));
+    }
+
+    /**
+     * Constructs a new tree printer which writes to the given writer.
+     * The writer should be buffered.
+     */
+    public TreePrinter(final Writer out) {
+        this.out = Objects.requireNonNull(out);
+    }
+
+    /**
+     * Prints the line for the given node name at the current level.
+     *
+     * @param name the name of the node.
+     * @param last whether or not the node is the last member of its
+     *        directory.
+     */
+    public void print(final CharSequence name, final boolean last)
+    throws IOException {
+        if (0 < level) {
+            out.write(padding, 0, (level - 1) * SEGMENT);
+            out.write(last ? LAST_PREFIX : DEFAULT_PREFIX);
+        }
+        out.append(name).write(NEWLINE);
+        this.last = last;
+        lines++;
+    }
+
+    /** Descends to the members of the last printed node. */
+    public void down() {
+        if (0 < level) {
+            final int off = (level - 1) * SEGMENT;
+            if (padding.length < off + SEGMENT)
+                padding = Arrays.copyOf(padding, 2 * padding.length);
+            System.arraycopy(last ? LAST_PADDING : DEFAULT_PADDING, 0,
+                    padding, off, SEGMENT);
+        }
+        level++;
+    }
+
+    /** Ascends from the members of a node. */
+    public void up() {
+        if (0 >= level) throw new IllegalStateException();
+        level--;
+    }
+
+    /** Returns the number of lines printed so far. */
+    public long lines() { return lines; }
+
+    @Override
+    public void flush() throws IOException { out.flush(); }
+}
@@ -0,0 +1,193 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Walks a directory tree in depth-first pre-order, which is the order of the
+ * lines of a tree graph.
+ * <p>
+ * Instead of recursing once per directory level, a {@link Walk} keeps an
+ * explicit stack of the directories which are currently being walked, so
+ * the thread stack usage is constant for any depth of the tree.
+ * The walk is lazy:
+ * The members of a directory get listed when the walk proceeds beyond the
+ * directory, so walking can stop at any time.
+ * <p>
+ * In sorted mode, the members of each directory get collected and sorted.
+ * In unsorted mode, the members get yielded in the order of the directory
+ * stream, so nothing gets collected at all.
+ * As usual with directory streams, an {@link IOException} from listing a
+ * directory gets thrown as a {@link DirectoryIteratorException}.
+ *
+ * @param  <N> the type of the nodes.
+ */
+public final class TreeWalker<N> {
+
+    private final TreeModel<N> model;
+    private final boolean sorted;
+
+    /**
+     * Constructs a new tree walker.
+     *
+     * @param model the tree model.
+     * @param sorted whether or not to walk the members of each directory in
+     *        sorted order.
+     */
+    public TreeWalker(final TreeModel<N> model, final boolean sorted) {
+        this.model = Objects.requireNonNull(model);
+        this.sorted = sorted;
+    }
+
+    /**
+     * Returns a new walk of the tree with the given root.
+     * The walk should get closed if it doesn't get exhausted.
+     */
+    public Walk walk(N root) { return new Walk(root); }
+
+    /** A node with its position in the tree. */
+    public static final class Visit<N> {
+        private final N node;
+        private final int depth;
+        private final boolean last, directory;
+
+        Visit(  final N node,
+                final int depth,
+                final boolean last,
+                final boolean directory) {
+            this.node = node;
+            this.depth = depth;
+            this.last = last;
+            this.directory = directory;
+        }
+
+        public N node() { return node; }
+
+        /** Returns the depth of the node, which is zero for the root. */
+        public int depth() { return depth; }
+
+        /**
+         * Returns {@code true} if and only if the node is the last member of
+         * its directory or the root.
+         */
+        public boolean isLast() { return last; }
+
+        public boolean isDirectory() { return directory; }
+    }
+
+    /** A lazy walk of a tree. */
+    public final class Walk implements Iterator<Visit<N>>, Closeable {
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        private N root;
+        private Visit<N> next, expand;
+
+        Walk(final N root) { this.root = Objects.requireNonNull(root); }
+
+        @Override
+        public boolean hasNext() {
+            if (null == next) next = advance();
+            return null != next;
+        }
+
+        @Override
+        public Visit<N> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            final Visit<N> visit = next;
+            next = null;
+            return visit;
+        }
+
+        @Override
+        public void remove() { throw new UnsupportedOperationException(); }
+
+        private Visit<N> advance() {
+            if (null != root) {
+                final N node = root;
+                root = null;
+                return visit(node, 0, true);
+            }
+            if (null != expand) {
+                final Visit<N> directory = expand;
+                expand = null;
+                try {
+                    stack.push(new Frame(directory));
+                } catch (IOException ex) {
+                    close();
+                    throw new DirectoryIteratorException(ex);
+                }
+            }
+            for (Frame frame; null != (frame = stack.peek()); ) {
+                try {
+                    if (frame.members.hasNext()) {
+                        final N node = frame.members.next();
+                        return visit(node, frame.depth,
+                                !frame.members.hasNext());
+                    }
+                } catch (RuntimeException ex) {
+                    close();
+                    throw ex;
+                }
+                stack.pop().close();
+            }
+            return null;
+        }
+
+        private Visit<N> visit(
+                final N node,
+                final int depth,
+                final boolean last) {
+            if (!model.exists(node)) {
+                close();
+                throw new IllegalArgumentException(node + " (file or directory does not exist)");
+            }
+            final Visit<N> visit = new Visit<>(node, depth, last,
+                    model.isDirectory(node));
+            if (visit.directory) expand = visit;
+            return visit;
+        }
+
+        /** Closes the directory streams which are currently open. */
+        @Override
+        public void close() {
+            for (Frame frame; null != (frame = stack.poll()); ) frame.close();
+            expand = null;
+        }
+    }
+
+    /** A directory which is currently being walked. */
+    private final class Frame {
+        final int depth;
+        final DirectoryStream<N> stream;
+        final Iterator<N> members;
+
+        Frame(final Visit<N> directory) throws IOException {
+            this.depth = directory.depth + 1;
+            if (sorted) {
+                this.stream = null;
+                this.members = model.children(directory.node).iterator();
+            } else {
+                this.stream = model.stream(directory.node);
+                this.members = stream.iterator();
+            }
+        }
+
+        void close() {
+            if (null == stream) return;
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                throw new DirectoryIteratorException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+
+/**
+ * The central directory of a ZIP file.
+ * <p>
+ * Reading the central directory only reads the end of the ZIP file, so it
+ * doesn't depend on the size of the entry data.
+ * The ZIP64 extensions are supported, but multi-disk ZIP files are not.
+ * Entry names get decoded in UTF-8 if the corresponding flag is set and in
+ * ISO-8859-1 otherwise.
+ */
+public final class ZipDirectory {
+
+    private static final int LFH_SIG = 0x04034b50;
+    private static final int CFH_SIG = 0x02014b50;
+    private static final int ZIP64_EOCDR_SIG = 0x06064b50;
+    private static final int ZIP64_EOCDL_SIG = 0x07064b50;
+    private static final int EOCDR_SIG = 0x06054b50;
+    private static final int EOCDR_MIN_LEN = 22;
+    private static final int MAX_COMMENT_LEN = 0xffff;
+    private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final long UINT32_MAX = 0xffffffffL;
+    private static final int UINT16_MAX = 0xffff;
+
+    /** The compression method for stored entries. */
+    public static final int STORED = 0;
+
+    /** The compression method for deflated entries. */
+    public static final int DEFLATED = 8;
+
+    private final List<Entry> entries;
+    private final long offset, size;
+
+    private ZipDirectory(
+            final List<Entry> entries,
+            final long offset,
+            final long size) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.offset = offset;
+        this.size = size;
+    }
+
+    /** Reads the central directory of the ZIP file in the given channel. */
+    public static ZipDirectory read(final FileChannel channel)
+    throws IOException {
+        final long length = channel.size();
+        final int tail = (int) Math.min(length, EOCDR_MIN_LEN + MAX_COMMENT_LEN);
+        final ByteBuffer buf = read(channel, length - tail, tail);
+        int eocdr = tail - EOCDR_MIN_LEN;
+        while (0 <= eocdr && EOCDR_SIG != buf.getInt(eocdr)) eocdr--;
+        if (0 > eocdr) throw new IOException("No ZIP file.");
+        long entries = buf.getShort(eocdr + 10) & UINT16_MAX;
+        long size = buf.getInt(eocdr + 12) & UINT32_MAX;
+        long offset = buf.getInt(eocdr + 16) & UINT32_MAX;
+        final long locator = length - tail + eocdr - 20;
+        if (0 <= locator) {
+            final ByteBuffer loc = read(channel, locator, 20);
+            if (ZIP64_EOCDL_SIG == loc.getInt(0)) {
+                final ByteBuffer zip64 = read(channel, loc.getLong(8), 56);
+                if (ZIP64_EOCDR_SIG != zip64.getInt(0))
+                    throw new IOException("Invalid ZIP64 end of central directory record.");
+                entries = zip64.getLong(32);
+                size = zip64.getLong(40);
+                offset = zip64.getLong(48);
+            }
+        }
+        if (0 > offset || 0 > size || length < offset + size
+                || Integer.MAX_VALUE < size)
+            throw new IOException("Invalid central directory.");
+        final ByteBuffer cd = read(channel, offset, (int) size);
+        final List<Entry> list = new ArrayList<>((int) Math.min(entries, 1 << 20));
+        final Calendar calendar = new GregorianCalendar();
+        while (cd.hasRemaining()) {
+            final int p = cd.position();
+            if (CFH_SIG != cd.getInt(p))
+                throw new IOException("Invalid central file header at offset " + (offset + p) + ".");
+            final int flags = cd.getShort(p + 8) & UINT16_MAX;
+            final int method = cd.getShort(p + 10) & UINT16_MAX;
+            final long dosTime = cd.getInt(p + 12) & UINT32_MAX;
+            final long crc = cd.getInt(p + 16) & UINT32_MAX;
+            long csize = cd.getInt(p + 20) & UINT32_MAX;
+            long usize = cd.getInt(p + 24) & UINT32_MAX;
+            final int nameLen = cd.getShort(p + 28) & UINT16_MAX;
+            final int extraLen = cd.getShort(p + 30) & UINT16_MAX;
+            final int commentLen = cd.getShort(p + 32) & UINT16_MAX;
+            long lho = cd.getInt(p + 42) & UINT32_MAX;
+            final byte[] name = new byte[nameLen];
+            cd.position(p + 46);
+            cd.get(name);
+            // Parse the ZIP64 extended information extra field.
+            for (int e = p + 46 + nameLen, end = e + extraLen; e + 4 <= end; ) {
+                final int id = cd.getShort(e) & UINT16_MAX;
+                final int len = cd.getShort(e + 2) & UINT16_MAX;
+                if (1 == id) {
+                    int q = e + 4;
+                    if (UINT32_MAX == usize) { usize = cd.getLong(q); q += 8; }
+                    if (UINT32_MAX == csize) { csize = cd.getLong(q); q += 8; }
+                    if (UINT32_MAX == lho) lho = cd.getLong(q);
+                }
+                e += 4 + len;
+            }
+            cd.position(p + 46 + nameLen + extraLen + commentLen);
+            list.add(new Entry(
+                    new String(name, 0 != (flags & UTF8_FLAG)
+                            ? StandardCharsets.UTF_8
+                            : StandardCharsets.ISO_8859_1),
+                    flags, method, dosTime, javaTime(calendar, dosTime),
+                    crc, usize, csize, lho));
+        }
+        return new ZipDirectory(list, offset, size);
+    }
+
+    private static ByteBuffer read(
+            final FileChannel channel,
+            final long position,
+            final int length)
+    throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining())
+            if (0 > channel.read(buf, position + buf.position()))
+                throw new IOException("Unexpected end of ZIP file.");
+        buf.flip();
+        return buf;
+    }
+
+    private static long javaTime(final Calendar calendar, final long dosTime) {
+        calendar.clear();
+        calendar.set(
+                (int) (dosTime >> 25 & 0x7f) + 1980,
+                (int) (dosTime >> 21 & 0x0f) - 1,
+                (int) (dosTime >> 16 & 0x1f),
+                (int) (dosTime >> 11 & 0x1f),
+                (int) (dosTime >> 5 & 0x3f),
+                (int) (dosTime << 1 & 0x3e));
+        return calendar.getTimeInMillis();
+    }
+
+    /** Returns the entries in the order of the central directory. */
+    public List<Entry> entries() { return entries; }
+
+    /** Returns the offset of the central directory in the ZIP file. */
+    public long offset() { return offset; }
+
+    /** Returns the size of the central directory in bytes. */
+    public long size() { return size; }
+
+    /**
+     * Returns the number of bytes before the central directory which are not
+     * referenced by any entry, e.g. the entry data and central directories
+     * which have been superseded by appending to the ZIP file.
+     * This reads the local file header of each entry.
+     * A data descriptor is assumed to have a signature, so the result is
+     * slightly too low for entries with a data descriptor without one.
+     */
+    public long waste(final FileChannel channel) throws IOException {
+        long used = 0;
+        for (final Entry entry : entries) {
+            used += entry.dataOffset(channel) - entry.offset() + entry.csize;
+            if (0 != (entry.flags & DATA_DESCRIPTOR_FLAG))
+                used += UINT32_MAX <= entry.csize || UINT32_MAX <= entry.size
+                        ? 24
+                        : 16;
+        }
+        return Math.max(0, offset - used);
+    }
+
+    /** An entry in the central directory. */
+    public static final class Entry {
+        private final String name;
+        private final int flags, method;
+        private final long dosTime, time, crc, size, csize, offset;
+
+        Entry(  final String name,
+                final int flags,
+                final int method,
+                final long dosTime,
+                final long time,
+                final long crc,
+                final long size,
+                final long csize,
+                final long offset) {
+            this.name = name;
+            this.flags = flags;
+            this.method = method;
+            this.dosTime = dosTime;
+            this.time = time;
+            this.crc = crc;
+            this.size = size;
+            this.csize = csize;
+            this.offset = offset;
+        }
+
+        public String name() { return name; }
+
+        /** Returns {@code true} if the name ends with a slash. */
+        public boolean isDirectory() { return name.endsWith("/"); }
+
+        /** Returns {@code true} if the entry is encrypted. */
+        public boolean isEncrypted() { return 0 != (flags & 1); }
+
+        /** Returns the general purpose bit flags. */
+        public int flags() { return flags; }
+
+        /** Returns the compression method. */
+        public int method() { return method; }
+
+        /** Returns the last modification time as an MS-DOS date and time. */
+        public long dosTime() { return dosTime; }
+
+        /** Returns the last modification time in milliseconds since the epoch. */
+        public long time() { return time; }
+
+        public long crc() { return crc; }
+
+        /** Returns the uncompressed size. */
+        public long size() { return size; }
+
+        /** Returns the compressed size. */
+        public long compressedSize() { return csize; }
+
+        /** Returns the offset of the local file header. */
+        public long offset() { return offset; }
+
+        /**
+         * Reads the local file header in order to return the offset of the
+         * compressed data.
+         */
+        public long dataOffset(final FileChannel channel) throws IOException {
+            final ByteBuffer lfh = read(channel, offset, 30);
+            if (LFH_SIG != lfh.getInt(0))
+                throw new IOException(name + " (invalid local file header)");
+            return offset + 30
+                    + (lfh.getShort(26) & UINT16_MAX)
+                    + (lfh.getShort(28) & UINT16_MAX);
+        }
+
+        @Override
+        public String toString() { return name; }
+    }
+}
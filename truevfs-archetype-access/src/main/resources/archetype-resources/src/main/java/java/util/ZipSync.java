@@ -0,0 +1,371 @@
+#set( $symbol_pound = '#' )
+#set( $symbol_dollar = '$' )
+#set( $symbol_escape = '\' )
+package ${package}.java.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Updates a ZIP file so that its entries equal the files in a directory.
+ * <p>
+ * The files get compared with the entries in the central directory of the
+ * ZIP file:
+ * A file is unchanged if its size and its last modification time, truncated
+ * to the two seconds resolution of the ZIP file format, equal the entry.
+ * If only the time differs, then the CRC-32 of the file gets computed and
+ * compared with the entry, so touching a file doesn't cause it to get
+ * recompressed.
+ * <p>
+ * If any file has been added or modified or any entry has been deleted, then
+ * the added and modified files and a new central directory get appended to
+ * the ZIP file by a {@link ParallelZipWriter}.
+ * The new central directory references the unchanged entries where they
+ * are, so they don't get copied and the time and the I/O scale with the
+ * size of the change, not with the size of the ZIP file.
+ * However, the modified and deleted entries and the old central directory
+ * remain in the ZIP file as waste, see {@link ZipDirectory${symbol_pound}waste}.
+ * If the share of the waste exceeds the given threshold, then the ZIP file
+ * gets compacted:
+ * A new ZIP file gets written to a temporary file which then replaces the
+ * ZIP file, copying all entries without recompressing them.
+ * If the ZIP file doesn't exist yet, then it gets written to a temporary
+ * file, too.
+ * Appending is not atomic like replacing the ZIP file:
+ * If appending fails, then the ZIP file gets truncated to its original
+ * length, but if the process dies, then the ZIP file may end up corrupt.
+ * <p>
+ * Files of up to one MB get read into the heap and compressed in parallel,
+ * while larger files get streamed and compressed on the calling thread in
+ * chunks, so the heap usage doesn't depend on the size of the files.
+ * If nothing has changed, then the ZIP file doesn't get written at all.
+ * <p>
+ * Encrypted entries and entries with a compression method other than
+ * {@code STORED} or {@code DEFLATED} always get recompressed.
+ * This class is not thread-safe.
+ */
+public final class ZipSync {
+
+    private static final long MAX_BUFFERED = 1024 * 1024;
+    private static final String TEMP_PREFIX = ".sync";
+    private static final String TEMP_SUFFIX = ".zip";
+
+    private final int threads, level, maxWaste;
+    private long added, modified, deleted, unchanged;
+    private long copiedBytes, savedBytes, writtenBytes;
+    private boolean compacted;
+
+    /**
+     * Constructs a new ZIP sync which compacts the ZIP file if more than half
+     * of it is waste.
+     *
+     * @param threads the number of worker threads for compressing.
+     * @param level the compression level for the added and modified files.
+     */
+    public ZipSync(final int threads, final int level) {
+        this(threads, level, 50);
+    }
+
+    /**
+     * Constructs a new ZIP sync.
+     *
+     * @param threads the number of worker threads for compressing.
+     * @param level the compression level for the added and modified files.
+     * @param maxWaste the maximum share of the waste in the size of the ZIP
+     *        file in percent, above which it gets compacted.
+     */
+    public ZipSync(final int threads, final int level, final int maxWaste) {
+        if (0 >= threads)
+            throw new IllegalArgumentException(threads + " (number of threads must be positive)");
+        if (0 > maxWaste || 100 < maxWaste)
+            throw new IllegalArgumentException(maxWaste + " (waste threshold must be between 0 and 100 percent)");
+        this.threads = threads;
+        this.level = level;
+        this.maxWaste = maxWaste;
+    }
+
+    /**
+     * Updates the given ZIP file so that its entries equal the files in the
+     * given directory.
+     * If the ZIP file doesn't exist, then it gets created.
+     *
+     * @return {@code true} if and only if the ZIP file has been written.
+     */
+    public boolean sync(File directory, File zip) throws IOException {
+        if (!directory.isDirectory())
+            throw new IOException(directory + " (not a directory)");
+        // Canonical paths let the scan recognize the ZIP file.
+        directory = directory.getCanonicalFile();
+        zip = zip.getCanonicalFile();
+        added = modified = deleted = unchanged = 0;
+        copiedBytes = savedBytes = writtenBytes = 0;
+        compacted = false;
+
+        final List<Item> items = new ArrayList<>();
+        scan(directory, "", zip, items);
+        if (!zip.exists()) {
+            added = items.size();
+            rewrite(zip, null, Collections.<ZipDirectory.Entry>emptyList(), items);
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(zip.toPath(),
+                StandardOpenOption.READ)) {
+            final Map<String, ZipDirectory.Entry> entries = new HashMap<>();
+            for (final ZipDirectory.Entry entry
+                    : ZipDirectory.read(channel).entries())
+                entries.put(entry.name(), entry);
+            final Calendar calendar = new GregorianCalendar();
+            final List<Item> keeps = new ArrayList<>();
+            final List<Item> changes = new ArrayList<>();
+            for (final Item item : items) {
+                item.entry = entries.remove(item.name);
+                if (null == item.entry) {
+                    added++;
+                    changes.add(item);
+                } else if (unchanged(item, calendar)) {
+                    unchanged++;
+                    keeps.add(item);
+                } else {
+                    modified++;
+                    changes.add(item);
+                }
+            }
+            deleted = entries.size();
+            if (changes.isEmpty() && 0 == deleted) return false;
+
+            append(zip, channel.size(), keeps, changes);
+            final ZipDirectory appended = ZipDirectory.read(channel);
+            if (appended.waste(channel) * 100 <= maxWaste * channel.size())
+                return true;
+            compacted = true;
+            rewrite(zip, channel, appended.entries(),
+                    Collections.<Item>emptyList());
+        }
+        return true;
+    }
+
+    /**
+     * Appends the changed files and a new central directory with the kept
+     * entries to the given ZIP file of the given length.
+     * If this fails, then the ZIP file gets truncated to its original length.
+     */
+    private void append(
+            final File zip,
+            final long length,
+            final List<Item> keeps,
+            final List<Item> changes)
+    throws IOException {
+        try (ParallelZipWriter writer = new ParallelZipWriter(
+                new BufferedOutputStream(
+                    new FileOutputStream(zip, true), 64 * 1024),
+                length, threads, 4 * threads, level)) {
+            for (final Item item : keeps) {
+                writer.keep(item.entry, item.time);
+                savedBytes += item.entry.size();
+            }
+            write(writer, changes);
+        } catch (IOException | RuntimeException ex) {
+            try (FileChannel channel = FileChannel.open(zip.toPath(),
+                    StandardOpenOption.WRITE)) {
+                channel.truncate(length);
+            } catch (IOException ex2) {
+                ex.addSuppressed(ex2);
+            }
+            throw ex;
+        }
+        writtenBytes += zip.length() - length;
+    }
+
+    /**
+     * Writes a new ZIP file to a temporary file which then replaces the given
+     * ZIP file.
+     * The given entries of the given channel get copied first, without
+     * recompressing them, then the given files get compressed.
+     */
+    private void rewrite(
+            final File zip,
+            final FileChannel channel,
+            final List<ZipDirectory.Entry> entries,
+            final List<Item> changes)
+    throws IOException {
+        final File temp = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX,
+                zip.getParentFile());
+        try {
+            try (ParallelZipWriter writer = new ParallelZipWriter(
+                    new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024),
+                    threads, 4 * threads, level)) {
+                for (final ZipDirectory.Entry entry : entries) {
+                    writer.copy(entry.name(), entry.time(), entry.crc(),
+                            entry.size(), entry.method(), channel,
+                            entry.dataOffset(channel), entry.compressedSize());
+                    copiedBytes += entry.compressedSize();
+                }
+                write(writer, changes);
+            }
+            writtenBytes += temp.length();
+            Files.move(temp.toPath(), zip.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            temp.delete();
+            throw ex;
+        }
+    }
+
+    /** Compresses the given files with the given writer. */
+    private static void write(
+            final ParallelZipWriter writer,
+            final List<Item> changes)
+    throws IOException {
+        for (final Item item : changes) {
+            final byte[] contents = item.isDirectory()
+                    ? new byte[0]
+                    : MAX_BUFFERED >= item.size ? read(item) : null;
+            if (null != contents) {
+                writer.write(item.name, contents, item.time);
+            } else {
+                try (InputStream in = new FileInputStream(item.file)) {
+                    writer.stream(item.name, in, item.time);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the files and directories in the given directory in
+     * depth-first order with ascending names, excluding the given ZIP file
+     * and any temporary files of a previous sync.
+     */
+    private static void scan(
+            final File directory,
+            final String prefix,
+            final File zip,
+            final List<Item> items) {
+        final File[] files = directory.listFiles();
+        if (null == files) return;
+        Arrays.sort(files);
+        for (final File file : files) {
+            final String name = file.getName();
+            // Skip the ZIP file and any temporary files left over by a
+            // previous sync.
+            if (file.equals(zip)
+                    || name.startsWith(TEMP_PREFIX) && name.endsWith(TEMP_SUFFIX))
+                continue;
+            if (file.isDirectory()) {
+                final String path = prefix + name + "/";
+                items.add(new Item(path, file));
+                scan(file, path, zip, items);
+            } else if (file.isFile()) {
+                items.add(new Item(prefix + name, file));
+            }
+        }
+    }
+
+    private static boolean unchanged(final Item item, final Calendar calendar)
+    throws IOException {
+        final ZipDirectory.Entry entry = item.entry;
+        if (entry.isEncrypted()
+                || ZipDirectory.STORED != entry.method()
+                    && ZipDirectory.DEFLATED != entry.method())
+            return false;
+        if (item.isDirectory()) return true;
+        if (item.size != entry.size()) return false;
+        if (ParallelZipWriter.dosTime(calendar, item.time) == entry.dosTime())
+            return true;
+        return crc(item.file) == entry.crc();
+    }
+
+    /**
+     * Reads the contents of the file of the given item or returns
+     * {@code null} if it has grown since it's been scanned, so it needs to
+     * get streamed instead.
+     */
+    private static byte[] read(final Item item) throws IOException {
+        final byte[] buf = new byte[(int) item.size];
+        int n = 0;
+        try (InputStream in = new FileInputStream(item.file)) {
+            for (int r; n < buf.length && 0 <= (r = in.read(buf, n, buf.length - n)); )
+                n += r;
+            if (n == buf.length && 0 <= in.read()) return null;
+        }
+        return n == buf.length ? buf : Arrays.copyOf(buf, n);
+    }
+
+    private static long crc(final File file) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buf = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            for (int n; 0 <= (n = in.read(buf)); ) crc.update(buf, 0, n);
+        }
+        return crc.getValue();
+    }
+
+    /** Returns the number of files which have been added by the last sync. */
+    public long added() { return added; }
+
+    /** Returns the number of files which have been modified by the last sync. */
+    public long modified() { return modified; }
+
+    /** Returns the number of entries which have been deleted by the last sync. */
+    public long deleted() { return deleted; }
+
+    /** Returns the number of unchanged entries of the last sync. */
+    public long unchanged() { return unchanged; }
+
+    /**
+     * Returns the compressed size of the entries which have been copied
+     * without recompressing them by compacting the ZIP file in the last
+     * sync.
+     */
+    public long copiedBytes() { return copiedBytes; }
+
+    /** Returns {@code true} if the last sync has compacted the ZIP file. */
+    public boolean compacted() { return compacted; }
+
+    /**
+     * Returns the uncompressed size of the unchanged entries which have been
+     * kept by the last sync, i.e. the number of bytes which didn't need to
+     * get recompressed.
+     */
+    public long savedBytes() { return savedBytes; }
+
+    /**
+     * Returns the number of bytes written by the last sync, i.e. the number
+     * of bytes appended to the ZIP file plus the size of any ZIP file
+     * written to a temporary file, or zero if nothing has been written.
+     */
+    public long writtenBytes() { return writtenBytes; }
+
+    private static final class Item {
+        final String name;
+        final File file;
+        final long size, time;
+        ZipDirectory.Entry entry;
+
+        Item(final String name, final File file) {
+            this.name = name;
+            this.file = file;
+            this.size = file.isDirectory() ? 0 : file.length();
+            this.time = file.lastModified();
+        }
+
+        boolean isDirectory() { return name.endsWith("/"); }
+    }
+}
@@ -4,9 +4,9 @@
 package ${package}.scala.file
 
 import ${package}.scala.Application
-import java.io.File
-import java.io.IOException;
-import java.util.Arrays
+import ${package}.java.util.FileTreeModel
+import ${package}.java.util.TreeGraph
+import ${package}.java.util.TreePrinter
 import net.java.truevfs.access.TFile
 
 /**
@@ -19,43 +19,26 @@ import net.java.truevfs.access.TFile
  * on the run time class path and the path name argument is {@code archive.zip}
  * and this file actually exists as a ZIP file, then the tree graph of the
  * directory structure of this ZIP file gets printed.
+ * <p>
+ * The tree graph gets printed by a {@link TreeGraph} like in the Java
+ * samples, which walks the tree iteratively, so deeply nested directories
+ * and archive files don't overflow the thread stack.
  *
  * @author Christian Schlichtherle
  */
 object Tree extends Application {
 
-  private val defaultPrefix  = "|-- "
-  private val lastPrefix     = "`-- "
-  private val defaultPadding = "|   "
-  private val lastPadding    = "    "
+  private val tree = new TreeGraph(new FileTreeModel, true)
 
   def main(args: Array[String]) {
     System.exit(Tree.run(args))
   }
 
   override protected def work(args: Array[String]) = {
-    val listfiles = if (0 < args.length) args else Array(".")
-    listfiles foreach (path => graph(new TFile(path)))
+    val paths = if (0 < args.length) args else Array(".")
+    val printer = new TreePrinter(System.out)
+    try paths foreach (path => tree graph (new TFile(path), printer))
+    finally printer.flush()
     0
   }
-
-  private def graph(file: File, padding: String = "", prefix: String = "") {
-    require(file.exists(), file + " (file or directory does not exist)")
-    System.out append padding append prefix println file.getName
-    if (file isDirectory ()) {
-      val entries = file listFiles ()
-      if (null eq entries)
-        throw new IOException(file + " (cannot list directory")
-      if (!entries.isEmpty) {
-        Arrays sort entries.asInstanceOf[Array[Object]]
-        val nextPadding = padding + (
-          if (prefix.isEmpty) ""
-          else if (prefix == lastPrefix) lastPadding
-          else defaultPadding)
-        import scala.collection.JavaConversions._
-        entries dropRight 1 foreach (graph(_, nextPadding, defaultPrefix))
-        graph(entries.last, nextPadding, lastPrefix)
-      }
-    }
-  }
 }
@@ -4,11 +4,10 @@
 package ${package}.scala.path
 
 import ${package}.scala.Application
-import java.nio.file.Files._
-import java.nio.file.Path
-import java.util.TreeSet
+import ${package}.java.util.PathTreeModel
+import ${package}.java.util.TreeGraph
+import ${package}.java.util.TreePrinter
 import net.java.truevfs.access.TPath
-import scala.collection.JavaConversions._
 
 /**
  * This command line utility prints the tree graph of the directory structure
@@ -20,46 +19,26 @@ import scala.collection.JavaConversions._
  * on the run time class path and the path name argument is {@code archive.zip}
  * and this file actually exists as a ZIP file, then the tree graph of the
  * directory structure of this ZIP file gets printed.
+ * <p>
+ * The tree graph gets printed by a {@link TreeGraph} like in the Java
+ * samples, which walks the tree iteratively, so deeply nested directories
+ * and archive files don't overflow the thread stack.
  *
  * @author Christian Schlichtherle
  */
 object Tree extends Application {
 
-  private val defaultPrefix  = "|-- "
-  private val lastPrefix     = "`-- "
-  private val defaultPadding = "|   "
-  private val lastPadding    = "    "
+  private val tree = new TreeGraph(new PathTreeModel, true)
 
   def main(args: Array[String]) {
     System.exit(Tree.run(args))
   }
 
   override protected def work(args: Array[String]) = {
-    val listfiles = if (0 < args.length) args else Array(".")
-    listfiles foreach (path => graph(new TPath(path)))
+    val paths = if (0 < args.length) args else Array(".")
+    val printer = new TreePrinter(System.out)
+    try paths foreach (path => tree graph (new TPath(path), printer))
+    finally printer.flush()
     0
   }
-
-  private def graph(file: Path, padding: String = "", prefix: String = "") {
-    require(exists(file), file + " (file or directory does not exist)")
-    System.out.append(padding).append(prefix).println(file.getFileName)
-    if (isDirectory(file)) {
-      // Create a sorted set from the directory stream.
-      val entries = new TreeSet[Path];
-      {
-        val stream = newDirectoryStream(file)
-        try { for (member <- stream) entries.add(member) }
-        finally { stream.close }
-      }
-      // Graph the sorted set.
-      if (!entries.isEmpty) {
-        val nextPadding = padding + (
-          if (prefix.isEmpty) ""
-          else if (prefix == lastPrefix) lastPadding
-          else defaultPadding)
-        entries dropRight 1 foreach (graph(_, nextPadding, defaultPrefix))
-        graph(entries.last, nextPadding, lastPrefix)
-      }
-    }
-  }
 }
@@ -0,0 +1,54 @@
+#!/bin/bash
+#
+# Compares the startup time of the main class (Tree by default) on test.zip
+# when running on a cold JVM, on a JVM with the AppCDS archive and as a GraalVM
+# native image.
+# Build the artifacts first, e.g. with:
+#
+#   mvn package -Pstandalone,appcds
+#   mvn package -Pnative
+#
+# Variants with missing artifacts are skipped.
+# Set ROUNDS to change the number of rounds, which defaults to ten.
+# Prints the median and the minimum wall time of each variant in milliseconds.
+#
+set -e
+cd "$(dirname "$0")"
+
+ROUNDS=${ROUNDS:-10}
+JAVA=${JAVA_HOME:+$JAVA_HOME/bin/}java
+JAR=$(ls target/*-standalone.jar 2>/dev/null | head -n 1)
+JSA=target/app.jsa
+NATIVE=$(find target -maxdepth 1 -type f -perm -u+x ! -name '*.*' 2>/dev/null | head -n 1)
+
+measure() {
+    local name=$1
+    shift
+    local times=()
+    for ((i = 0; i < ROUNDS; i++)); do
+        local start=$(date +%s%N)
+        "$@" > /dev/null
+        local end=$(date +%s%N)
+        times+=($(( (end - start) / 1000000 )))
+    done
+    local sorted=($(printf '%s\n' "${times[@]}" | sort -n))
+    printf '%-10s median %6d ms   min %6d ms\n' \
+        "$name" "${sorted[$((ROUNDS / 2))]}" "${sorted[0]}"
+}
+
+if [ -n "$JAR" ]; then
+    measure "cold JVM" "$JAVA" -Xshare:off -jar "$JAR" test.zip
+    measure "JVM" "$JAVA" -jar "$JAR" test.zip
+    if [ -f "$JSA" ]; then
+        measure "AppCDS" "$JAVA" -XX:SharedArchiveFile="$JSA" -jar "$JAR" test.zip
+    else
+        echo "AppCDS     skipped: $JSA not found"
+    fi
+else
+    echo "JVM        skipped: target/*-standalone.jar not found"
+fi
+if [ -n "$NATIVE" ]; then
+    measure "native" "$NATIVE" test.zip
+else
+    echo "native     skipped: native image not found"
+fi